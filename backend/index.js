@@ -11,10 +11,13 @@ const { MongoClient } = require("mongodb");
 const zen = require("zen-quote");
 
 const STATS = require("./stats.json");
+const GL_CAPS = require("./gl_caps.json");
 
 const UUID = /^[0-9a-fA-F]{8}\-[0-9a-fA-F]{4}\-[0-9a-fA-F]{4}\-[0-9a-fA-F]{4}\-[0-9a-fA-F]{12}$/;
 const UA_MATCH = new RegExp(`^SCHWS/${process.env.MC_VERSION}/${process.env.MOD_VERSION}$`);
 const GL_VERSION = /^(\d+\.\d+)/;
+/** Stats that are submitted as a family of indexed keys, e.g. `jvm_arg[0]`, listed in stats.json as `jvm_arg[*]`. */
+const STAT_PREFIXES = STATS.filter(key => key.endsWith("[*]")).map(key => key.slice(0, -2));
 
 let collection;
 
@@ -38,6 +41,85 @@ function validateUserAgent(req) {
   return ua && UA_MATCH.test(ua);
 }
 
+/** Whether the key is a member of the family with the given prefix, e.g. `jvm_arg[0]` for `jvm_arg[`. The part in
+ * brackets can't be empty, or contain `.` or `$`, which Mongo would read as a nested path or an operator. This is the
+ * same rule as the client's StatDefinition. */
+function isFamilyStat(key, prefix) {
+  if (!key.startsWith(prefix) || !key.endsWith("]")) return false;
+
+  const index = key.slice(prefix.length, -1);
+  return index.length > 0 && !/[.$[\]]/.test(index);
+}
+
+function isKnownStat(key) {
+  return STATS.includes(key) || STAT_PREFIXES.some(p => isFamilyStat(key, p));
+}
+
+/** Collects the indexed `item[i]` stats into an array stored under `countKey`. Returns false if they don't match the
+ * submitted count. */
+function collectArray(stats, countKey, item) {
+  if (!stats[countKey]) return true;
+
+  const count = parseInt(stats[countKey]);
+  if (isNaN(count)) return false;
+
+  const values = [];
+  for (let i = 0; i < count; i++) {
+    const itemKey = `${item}[${i}]`;
+    if (!stats[itemKey] || typeof(stats[itemKey]) !== "string")
+      return false;
+
+    values[i] = stats[itemKey];
+    delete stats[itemKey];
+  }
+
+  stats[countKey] = values;
+  return true;
+}
+
+/** Expands the compact `gl_caps_bits` bitset back into the named `gl_caps[...]` flags. Returns false if the registry
+ * version is unknown. */
+function expandGLCaps(stats) {
+  if (stats.gl_caps_bits === undefined) return true;
+
+  const length = GL_CAPS.versions[stats.gl_caps_version];
+  if (length === undefined) return false;
+
+  const bits = Buffer.from(stats.gl_caps_bits, "base64");
+  for (let i = 0; i < length; i++) {
+    const set = i >> 3 < bits.length && (bits[i >> 3] & (1 << (i & 7))) !== 0;
+    stats[`gl_caps[${GL_CAPS.caps[i]}]`] = set ? "true" : "false";
+  }
+
+  delete stats.gl_caps_bits;
+  delete stats.gl_caps_version;
+  return true;
+}
+
+/**
+ * Builds the update that applies a re-survey's changed and removed stats to the original submission, or replaces its
+ * stats outright when the client no longer knows what it sent before.
+ */
+function getMergeUpdate(stats, removed, replace) {
+  if (replace)
+    return { $set: { stats, updatedAt: new Date() } };
+
+  const set = { updatedAt: new Date() };
+  for (let key in stats)
+    set[`stats.${key}`] = stats[key];
+
+  const unset = {};
+  for (let key of removed) {
+    // the capability bitset is stored as individual flags
+    if (key === "gl_caps_bits" || key === "gl_caps_version")
+      GL_CAPS.caps.forEach(cap => unset[`stats.gl_caps[${cap}]`] = "");
+    else
+      unset[`stats.${key}`] = "";
+  }
+
+  return _.isEmpty(unset) ? { $set: set } : { $set: set, $unset: unset };
+}
+
 app.post("/submit/:token", async (req, res) => {
   if (!req.params.token || !UUID.test(req.params.token))
     return res.json({ ok: false, error: "invalid_token" });
@@ -46,40 +128,66 @@ app.post("/submit/:token", async (req, res) => {
   if (!validateUserAgent(req))
     return res.json({ ok: false, error: "invalid_client" });
 
-  const { stats } = req.body;
+  const { stats, previous } = req.body;
+  const removed = req.body.removed || [];
+  const replace = req.body.replace || false;
+  if (previous !== undefined && (typeof(previous) !== "string" || !UUID.test(previous) || previous === req.params.token))
+    return res.json({ ok: false, error: "invalid_previous" });
+  if (!Array.isArray(removed))
+    return res.json({ ok: false, error: "invalid_stat", stat: "removed" });
+  if (typeof(replace) !== "boolean" || (replace && removed.length > 0))
+    return res.json({ ok: false, error: "invalid_replace" });
+  for (let key of removed) {
+    if (typeof(key) !== "string" || !isKnownStat(key))
+      return res.json({ ok: false, error: "invalid_stat", stat: key });
+  }
 
   // validate the stats
   for (let key in stats) {
-    if (!key.startsWith("jvm_arg[") && (!STATS.includes(key) || typeof(stats[key]) !== "string"))
+    if (!isKnownStat(key) || typeof(stats[key]) !== "string")
       return res.json({ ok: false, error: "invalid_stat", stat: key });
 
     stats[key] = stats[key].substring(0, Math.min(stats[key].length, 512));
   }
 
-  // jvm_args is an array, so let's handle that
-  let jvmArgs = [];
-  if (stats["jvm_args"]) {
-    const jvmArgsCount = parseInt(stats["jvm_args"]);
-    if (isNaN(jvmArgsCount)) return res.json({ ok: false, error: "invalid_jvm_args" });
+  // older clients send the capabilities as individual flags, so store them that way
+  if (!expandGLCaps(stats))
+    return res.json({ ok: false, error: "invalid_stat", stat: "gl_caps_version" });
 
-    for (let i = 0; i < jvmArgsCount; i++) {
-      const jvmArgKey = `jvm_arg[${i}]`;
-      if (!stats[jvmArgKey] || typeof(stats[jvmArgKey]) !== "string")
-        return res.json({ ok: false, error: "invalid_jvm_args" });
-
-      jvmArgs[i] = stats[jvmArgKey];
-      delete stats[jvmArgKey];
-      stats.jvm_args = jvmArgs;
-    }
-  }
+  // jvm_args and gl_exts are arrays, so let's handle those
+  if (!collectArray(stats, "jvm_args", "jvm_arg"))
+    return res.json({ ok: false, error: "invalid_jvm_args" });
+  if (!collectArray(stats, "gl_exts", "gl_ext"))
+    return res.json({ ok: false, error: "invalid_gl_exts" });
 
   // insert to the DB
   try {
-    await collection.insertOne({
-      stats,
-      createdAt: new Date(),
-      token: req.params.token
-    });
+    if (previous) {
+      // re-surveys only carry what changed. The changes are merged into the original submission, so unchanged stats
+      // are never stored twice, and the delta itself is kept alongside it as history.
+      const prev = await collection.findOne({ token: previous });
+      if (!prev)
+        return res.json({ ok: false, error: "unknown_previous" });
+      const root = prev.root || prev.token;
+
+      // the merge is idempotent, so it goes first - a retry after a failed insert applies it again harmlessly
+      await collection.updateOne({ token: root }, getMergeUpdate(stats, removed, replace));
+      await collection.insertOne({
+        delta: stats,
+        removed,
+        replace,
+        createdAt: new Date(),
+        token: req.params.token,
+        previous,
+        root
+      });
+    } else {
+      await collection.insertOne({
+        stats,
+        createdAt: new Date(),
+        token: req.params.token
+      });
+    }
   } catch (err) {
     if (err.name === "MongoError" && err.code === 11000)
       return res.json({ ok: false, error: "already_submitted" });
@@ -219,7 +327,8 @@ function getModList(results) {
 app.use(async (req, res) => {
   // We can process the results in the DB, but considering they're all going to be used at once anyway, we may as well
   // process them here.
-  const results = _.map(await collection.find({}).toArray(), "stats");
+  // re-survey deltas are already merged into the submission they update
+  const results = _.map(await collection.find({ root: { $exists: false } }).toArray(), "stats");
   const count = results.length;
   const openGLVersions = getOpenGLVersions(results);
 
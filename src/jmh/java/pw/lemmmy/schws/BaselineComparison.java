@@ -0,0 +1,97 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Compares a JMH JSON result file against a committed baseline: the change in each benchmark's score, and in the
+// bytes allocated per operation from the gc profiler. A change bigger than both runs' error margins put together is
+// marked with a !, as it is unlikely to be noise - on the same machine, at least.
+public class BaselineComparison {
+    private static final String ROW = "%-50s %14s %14s %9s %12s %12s%n";
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <results.json>");
+            System.exit(2);
+        }
+        
+        if (!Files.exists(Paths.get(args[0]))) {
+            System.out.printf("No baseline at %s, record one with the jmhBaseline task%n", args[0]);
+            return;
+        }
+        
+        Map<String, JsonObject> baseline = load(args[0]), results = load(args[1]);
+        System.out.printf(ROW, "Benchmark", "Baseline", "Current", "Change", "B/op before", "B/op after");
+        
+        results.forEach((name, result) -> {
+            JsonObject base = baseline.get(name);
+            JsonObject score = result.getAsJsonObject("primaryMetric");
+            String unit = score.get("scoreUnit").getAsString();
+            
+            if (base == null) {
+                String after = format(score.get("score").getAsDouble(), unit);
+                System.out.printf(ROW, name, "-", after, "-", "-", getAllocation(result));
+                return;
+            }
+            
+            JsonObject baseScore = base.getAsJsonObject("primaryMetric");
+            double before = baseScore.get("score").getAsDouble(), after = score.get("score").getAsDouble();
+            double error = getError(baseScore) + getError(score);
+            String change = String.format(Locale.ROOT, "%+.1f%%%s", (after - before) / before * 100,
+                Math.abs(after - before) > error ? "!" : "");
+            
+            System.out.printf(ROW, name, format(before, unit), format(after, unit), change, getAllocation(base),
+                getAllocation(result));
+        });
+    }
+    
+    // Benchmarks keyed by name and parameters, so each parameter combination is compared with its own baseline
+    private static Map<String, JsonObject> load(String file) throws IOException {
+        Map<String, JsonObject> benchmarks = new LinkedHashMap<>();
+        
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            JsonArray array = new JsonParser().parse(reader).getAsJsonArray();
+            for (JsonElement element : array) {
+                JsonObject benchmark = element.getAsJsonObject();
+                String name = benchmark.get("benchmark").getAsString().replace("pw.lemmmy.schws.", "");
+                if (benchmark.has("params")) name += benchmark.get("params").toString();
+                benchmarks.put(name, benchmark);
+            }
+        }
+        
+        return benchmarks;
+    }
+    
+    private static double getError(JsonObject metric) {
+        double error = metric.get("scoreError").getAsDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+    
+    // gc.alloc.rate.norm, which JMH prefixes with a separator character that has varied between versions
+    private static String getAllocation(JsonObject benchmark) {
+        JsonObject metrics = benchmark.getAsJsonObject("secondaryMetrics");
+        if (metrics == null) return "-";
+        
+        for (Map.Entry<String, JsonElement> metric : metrics.entrySet()) {
+            if (!metric.getKey().endsWith("gc.alloc.rate.norm")) continue;
+            double bytes = metric.getValue().getAsJsonObject().get("score").getAsDouble();
+            return String.format(Locale.ROOT, "%.0f", bytes);
+        }
+        return "-";
+    }
+    
+    private static String format(double score, String unit) {
+        return String.format(Locale.ROOT, "%.3f %s", score, unit);
+    }
+}
@@ -0,0 +1,49 @@
+package pw.lemmmy.schws;
+
+import org.apache.logging.log4j.LogManager;
+
+import java.util.BitSet;
+import java.util.Map;
+
+// Shared fixtures for the benchmarks: a survey response shaped like a real one, and the mod's logger, which is
+// normally only set up by FML
+final class BenchmarkStats {
+    // unknown extensions are sent by name, a typical driver reports a few dozen that the registry doesn't know
+    private static final int UNKNOWN_EXTENSIONS = 40;
+    
+    private BenchmarkStats() {}
+    
+    static void setUp() {
+        if (SCHardwareSurvey.LOG == null) SCHardwareSurvey.LOG = LogManager.getLogger("schws-benchmark");
+    }
+    
+    // The JVM and OS stats are collected for real, the hardware and GL ones are made up
+    static Map<String, String> create() {
+        StatRecord stats = new StatRecord();
+        StatsCollector.collectJVMArgs(stats);
+        StatsCollector.collectOSData(stats);
+        StatsCollector.collectMemoryStats(stats);
+        JvmTelemetry.collect(stats);
+        
+        stats.putLong("cpu_cores", 16);
+        stats.putString("cpu_model", "AMD Ryzen 7 5800X 8-Core Processor");
+        stats.putLong("memory_system_total", 32L << 30);
+        stats.putString("display_model", "NVIDIA GeForce RTX 3070/PCIe/SSE2");
+        stats.putString("opengl_version", "4.6.0 NVIDIA 536.23");
+        stats.putString("opengl_vendor", "NVIDIA Corporation");
+        stats.putLong("gl_max_texture_size", 32768);
+        
+        // every other known extension present
+        BitSet bits = new BitSet();
+        for (int i = 0; i < GLCapsRegistry.size(); i += 2) bits.set(i);
+        stats.putLong(GLCapsRegistry.VERSION_STAT, GLCapsRegistry.VERSION);
+        stats.putString(GLCapsRegistry.BITS_STAT, GLCapsRegistry.encode(bits));
+        
+        for (int i = 0; i < UNKNOWN_EXTENSIONS; i++) {
+            stats.putString(String.format("gl_ext[%d]", i), String.format("GL_NVX_benchmark_extension_%d", i));
+        }
+        stats.putLong("gl_exts", UNKNOWN_EXTENSIONS);
+        
+        return stats.toStringMap();
+    }
+}
@@ -0,0 +1,62 @@
+package pw.lemmmy.schws;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The collectors that don't need the game or a GL context, plus building the response from the record
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CollectorBenchmark {
+    private StatRecord full;
+    
+    @Setup
+    public void setUp() {
+        BenchmarkStats.setUp();
+        full = new StatRecord();
+        full.putAll(BenchmarkStats.create());
+    }
+    
+    @Benchmark
+    public StatRecord jvmArgs() {
+        StatRecord stats = new StatRecord();
+        StatsCollector.collectJVMArgs(stats);
+        return stats;
+    }
+    
+    @Benchmark
+    public StatRecord osData() {
+        StatRecord stats = new StatRecord();
+        StatsCollector.collectOSData(stats);
+        return stats;
+    }
+    
+    @Benchmark
+    public StatRecord memoryStats() {
+        StatRecord stats = new StatRecord();
+        StatsCollector.collectMemoryStats(stats);
+        return stats;
+    }
+    
+    @Benchmark
+    public StatRecord jvmRuntime() {
+        StatRecord stats = new StatRecord();
+        JvmTelemetry.collect(stats);
+        return stats;
+    }
+    
+    @Benchmark
+    public boolean isJvm64bit() {
+        return StatsCollector.isJvm64bit();
+    }
+    
+    @Benchmark
+    public Map<String, String> toStringMap() {
+        return full.toStringMap();
+    }
+}
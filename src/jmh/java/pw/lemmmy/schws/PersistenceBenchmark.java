@@ -0,0 +1,53 @@
+package pw.lemmmy.schws;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Reading and rewriting the properties file, in a temporary config directory
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PersistenceBenchmark {
+    private Path configDir;
+    private StatsPersistence persistence;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkStats.setUp();
+        configDir = Files.createTempDirectory("schws-jmh");
+        
+        // a file with the usual handful of properties in it
+        persistence = new StatsPersistence(configDir.toFile());
+        persistence.loadProperties();
+        persistence.getInstallId();
+        persistence.submitted("00000000-0000-0000-0000-000000000000");
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(configDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Benchmark
+    public StatsPersistence load() {
+        StatsPersistence loaded = new StatsPersistence(configDir.toFile());
+        loaded.loadProperties();
+        return loaded;
+    }
+    
+    @Benchmark
+    public void save() {
+        persistence.resurveyed();
+    }
+}
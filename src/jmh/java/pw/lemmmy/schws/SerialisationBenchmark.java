@@ -0,0 +1,59 @@
+package pw.lemmmy.schws;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Writing the request body, both the plain fixed-length form and the gzipped form that is normally sent. The bytes go
+// nowhere, so only the serialisation (and compression) is measured.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerialisationBenchmark {
+    private Map<String, String> stats;
+    private CountingSink sink;
+    
+    @Setup
+    public void setUp() {
+        BenchmarkStats.setUp();
+        stats = BenchmarkStats.create();
+        sink = new CountingSink();
+    }
+    
+    @Benchmark
+    public long plain() throws IOException {
+        sink.count = 0;
+        StatsSubmitter.writeBody(sink, stats, null, null);
+        return sink.count;
+    }
+    
+    @Benchmark
+    public long gzipped() throws IOException {
+        sink.count = 0;
+        try (GZIPOutputStream gzip = new GZIPOutputStream(sink)) {
+            StatsSubmitter.writeBody(gzip, stats, null, null);
+        }
+        return sink.count;
+    }
+    
+    private static class CountingSink extends OutputStream {
+        private long count;
+        
+        @Override
+        public void write(int b) {
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package pw.lemmmy.schws;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Full submissions - validation, connecting, the gzipped upload and reading the response - against a server on the
+// loopback interface that accepts everything, so there's no real network in the way. Loopback TCP still has Nagle and
+// delayed ACKs, which show up here exactly as they would against a real server.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SubmissionBenchmark {
+    private static final byte[] RESPONSE = "{\"ok\":true,\"upliftHeadThought\":\"benchmark\"}"
+        .getBytes(StandardCharsets.UTF_8);
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    private String endpoint;
+    private Map<String, String> stats;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkStats.setUp();
+        stats = BenchmarkStats.create();
+        
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/submit/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) >= 0) {}
+            }
+            
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(RESPONSE);
+            }
+        });
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        
+        InetSocketAddress address = server.getAddress();
+        endpoint = String.format("http://%s:%d/submit", address.getHostString(), address.getPort());
+    }
+    
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    @Benchmark
+    public String submit() {
+        return StatsSubmitter.submitInternal(endpoint, UUID.randomUUID().toString(), stats, null, null);
+    }
+}
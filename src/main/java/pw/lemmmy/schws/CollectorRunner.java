@@ -0,0 +1,106 @@
+package pw.lemmmy.schws;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs collectors against a per-task budget and a global deadline for the whole batch. Collectors that overrun are
+// abandoned and replaced with a "<name>_timeout" marker stat, so a hung probe can never hold up the survey.
+class CollectorRunner {
+    private final ExecutorService pool;
+    private final ScheduledExecutorService timer;
+    private final long deadline;
+    
+    CollectorRunner(int threads, long globalBudgetMillis) {
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("SCHWS Collector #%d")
+            .setDaemon(true)
+            .build());
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("SCHWS Collector Timer")
+            .setDaemon(true)
+            .build());
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(globalBudgetMillis);
+    }
+    
+    private long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+    
+    // Runs the task on the pool, completing with a timeout marker if it does not finish within its budget. The budget
+    // only starts once the task gets a thread, so a task queued behind a slow one isn't abandoned before it ever runs,
+    // while the global deadline caps the time spent waiting and running together.
+    CompletableFuture<StatRecord> submit(CollectorTask task) {
+        CompletableFuture<StatRecord> result = new CompletableFuture<>();
+        
+        long remaining = remainingMillis();
+        if (remaining <= 0) {
+            result.complete(timedOut(task));
+            return result;
+        }
+        
+        AtomicBoolean abandoned = new AtomicBoolean();
+        Future<?> running = pool.submit(() -> {
+            if (result.isDone()) return;
+            
+            long budget = Math.max(0, Math.min(task.budgetMillis, remainingMillis()));
+            ScheduledFuture<?> timeout = timer.schedule(() -> abandon(task, result, abandoned,
+                "did not finish within its budget of " + budget + " ms"), budget, TimeUnit.MILLISECONDS);
+            result.whenComplete((stats, e) -> timeout.cancel(false));
+            
+            long start = System.nanoTime();
+            StatRecord stats = task.run();
+            SurveyMetrics.INSTANCE.recordCollector(task.name, System.nanoTime() - start);
+            result.complete(stats);
+        });
+        
+        ScheduledFuture<?> deadlineTimeout = timer.schedule(() -> abandon(task, result, abandoned,
+            "did not finish before the deadline"), remaining, TimeUnit.MILLISECONDS);
+        result.whenComplete((stats, e) -> {
+            deadlineTimeout.cancel(false);
+            if (abandoned.get()) running.cancel(true);
+        });
+        
+        return result;
+    }
+    
+    private static void abandon(CollectorTask task, CompletableFuture<StatRecord> result, AtomicBoolean abandoned,
+                                String reason) {
+        // set before completing, so the completion handler knows to interrupt the task
+        abandoned.set(true);
+        if (result.complete(timedOut(task))) {
+            SCHardwareSurvey.LOG.warn("Collector {} {}, abandoning it", task.name, reason);
+        }
+    }
+    
+    // Runs the task on the calling thread. Render thread collectors can't be pre-empted, so an overrun is only
+    // logged, but once the global deadline has passed the remaining ones are skipped entirely.
+    StatRecord runInline(CollectorTask task) {
+        if (remainingMillis() <= 0) return timedOut(task);
+        
+        long start = System.nanoTime();
+        StatRecord stats = task.run();
+        long nanos = System.nanoTime() - start;
+        SurveyMetrics.INSTANCE.recordCollector(task.name, nanos);
+        
+        long took = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (took > task.budgetMillis) {
+            SCHardwareSurvey.LOG.warn("Collector {} took {} ms, over its budget of {} ms", task.name, took, task.budgetMillis);
+        }
+        
+        return stats;
+    }
+    
+    // Stops accepting work. Threads still stuck in an abandoned collector are daemons and won't hold up shutdown.
+    void shutdown() {
+        pool.shutdownNow();
+        timer.shutdownNow();
+    }
+    
+    private static StatRecord timedOut(CollectorTask task) {
+        StatRecord stats = new StatRecord();
+        stats.putLong(task.name + "_timeout", task.budgetMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,40 @@
+package pw.lemmmy.schws;
+
+import java.util.function.Consumer;
+
+// A single independent collector. Each run writes into its own record, so tasks can run concurrently and be merged
+// back together by StatsCollector once they have all finished.
+class CollectorTask {
+    enum Stage {
+        // started straight away in postInit, on the collector pool
+        BACKGROUND,
+        // need the GL context, so run inline on the first client tick
+        RENDER,
+        // need a loaded world and an idle game (the benchmarks), so run one at a time once the survey is shown
+        WORLD
+    }
+    
+    final String name;
+    final Stage stage;
+    final long budgetMillis;
+    private final Consumer<StatRecord> body;
+    
+    CollectorTask(String name, Stage stage, long budgetMillis, Consumer<StatRecord> body) {
+        this.name = name;
+        this.stage = stage;
+        this.budgetMillis = budgetMillis;
+        this.body = body;
+    }
+    
+    StatRecord run() {
+        StatRecord stats = new StatRecord();
+        
+        try {
+            body.accept(stats);
+        } catch (Throwable t) {
+            SCHardwareSurvey.LOG.warn("Collector {} failed", name, t);
+        }
+        
+        return stats;
+    }
+}
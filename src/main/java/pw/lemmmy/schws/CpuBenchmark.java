@@ -0,0 +1,127 @@
+package pw.lemmmy.schws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// A short CPU throughput benchmark, so we can see what players' CPUs actually deliver rather than what the model name
+// suggests - laptops throttle, and VMs rarely get the whole machine. Everything is time-boxed: each measurement runs
+// for a fixed slice of the budget and counts how much work got done, rather than timing a fixed amount of work.
+class CpuBenchmark {
+    // iterations between deadline checks, small enough to stop promptly even on a very slow machine
+    private static final int CHUNK = 1 << 14;
+    
+    // at most this many points on the scaling curve, spread over 1..availableProcessors threads
+    private static final int MAX_STEPS = 6;
+    
+    // keeps the JIT from discarding the kernels' results
+    private static volatile long sink;
+    
+    private final long budgetNanos;
+    
+    CpuBenchmark(long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+    
+    void collect(StatRecord stats) throws InterruptedException {
+        long slice = budgetNanos / 8;
+        
+        // give the JIT a chance to compile both kernels before anything is measured
+        run(false, System.nanoTime() + slice / 2);
+        run(true, System.nanoTime() + slice / 2);
+        
+        // scores are millions of kernel iterations per second on a single thread
+        stats.putLong("cpu_bench_int", measure(false, slice) / 1_000_000);
+        stats.putLong("cpu_bench_float", measure(true, slice) / 1_000_000);
+        
+        List<Integer> steps = getSteps(Runtime.getRuntime().availableProcessors());
+        stats.putString("cpu_bench_scaling", measureScaling(steps, budgetNanos - 3 * slice));
+    }
+    
+    // Iterations per second of a kernel on the calling thread
+    private static long measure(boolean floating, long nanos) throws InterruptedException {
+        long start = System.nanoTime();
+        long iterations = run(floating, start + nanos);
+        return iterations * 1_000_000_000L / Math.max(1, System.nanoTime() - start);
+    }
+    
+    // Runs a kernel until the deadline, returning how many iterations were completed
+    private static long run(boolean floating, long deadline) throws InterruptedException {
+        long iterations = 0, seed = System.nanoTime() | 1;
+        
+        do {
+            if (Thread.interrupted()) throw new InterruptedException();
+            sink ^= floating ? floatKernel(seed, CHUNK) : intKernel(seed, CHUNK);
+            iterations += CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        return iterations;
+    }
+    
+    // xorshift and multiply-accumulate, a dependent chain of simple integer ops
+    private static long intKernel(long x, int iterations) {
+        long acc = 0;
+        for (int i = 0; i < iterations; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            acc += (x * 0x9E3779B97F4A7C15L) ^ (acc >>> 11);
+        }
+        return acc;
+    }
+    
+    // two interleaved multiply-add chains, kept in a stable range so they never hit denormals or infinities
+    private static long floatKernel(long seed, int iterations) {
+        double a = (seed & 0xFFFF) / 65536.0, b = 1 - a, acc = 0;
+        for (int i = 0; i < iterations; i++) {
+            a = a * 0.999999 + 0.000001;
+            b = b * 0.999998 + 0.000002;
+            acc += a * b - acc * 0.5;
+        }
+        return Double.doubleToRawLongBits(acc);
+    }
+    
+    // 1, 2, 4... threads up to the processor count, which is always included
+    static List<Integer> getSteps(int processors) {
+        List<Integer> steps = new ArrayList<>();
+        for (int n = 1; n < processors && steps.size() < MAX_STEPS - 1; n *= 2) steps.add(n);
+        steps.add(processors);
+        return steps;
+    }
+    
+    // Throughput of the integer kernel on each number of threads, as a speedup over one thread, e.g. "1:1.00,2:1.96"
+    private static String measureScaling(List<Integer> steps, long nanos) throws InterruptedException {
+        long slice = nanos / steps.size();
+        ForkJoinPool pool = new ForkJoinPool(steps.get(steps.size() - 1));
+        
+        try {
+            StringBuilder curve = new StringBuilder();
+            double base = 0;
+            
+            for (int threads : steps) {
+                long deadline = System.nanoTime() + slice;
+                List<Callable<Long>> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) workers.add(() -> run(false, deadline));
+                
+                long start = System.nanoTime(), iterations = 0;
+                for (Future<Long> worker : pool.invokeAll(workers)) iterations += worker.get();
+                double throughput = (double) iterations / Math.max(1, System.nanoTime() - start);
+                
+                if (base == 0) base = throughput;
+                if (curve.length() > 0) curve.append(',');
+                curve.append(threads).append(':').append(String.format(Locale.ROOT, "%.2f", throughput / base));
+            }
+            
+            return curve.toString();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
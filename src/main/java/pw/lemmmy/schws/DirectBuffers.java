@@ -0,0 +1,37 @@
+package pw.lemmmy.schws;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+// Frees direct and mapped buffers straight away, rather than leaving tens of megabytes of native memory (or an open
+// mapping) around until the GC next collects the buffer object. There's no public API for this on Java 8, so it goes
+// through the JDK internals, and quietly leaves the buffer to the GC if they aren't there.
+final class DirectBuffers {
+    private DirectBuffers() {}
+    
+    // The buffer must not be touched again afterwards - its memory is gone
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // Java 9 onwards
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            } catch (NoSuchMethodException ignored) {}
+            
+            // Java 8: sun.nio.ch.DirectBuffer.cleaner().clean()
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            SCHardwareSurvey.LOG.debug("Could not free direct buffer, leaving it to the GC", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package pw.lemmmy.schws;
+
+import net.minecraft.client.renderer.GlStateManager;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GLContext;
+
+import java.util.*;
+
+// Reads the full extension list from the driver, once. Must be used from the render thread.
+class DriverExtensionSource implements GLExtensionSource {
+    private Collection<String> extensions;
+    
+    @Override
+    public Collection<String> getExtensions() {
+        if (extensions != null) return extensions;
+        
+        Set<String> list = new LinkedHashSet<>();
+        if (isCoreProfile()) {
+            // GL_EXTENSIONS is not a valid glGetString target on core profiles
+            int count = GlStateManager.glGetInteger(GL30.GL_NUM_EXTENSIONS);
+            for (int i = 0; i < count; i++) {
+                String extension = GL30.glGetStringi(GL11.GL_EXTENSIONS, i);
+                if (extension != null) list.add(extension);
+            }
+        } else {
+            String all = GlStateManager.glGetString(GL11.GL_EXTENSIONS);
+            if (all != null) list.addAll(Arrays.asList(all.trim().split("\\s+")));
+        }
+        GlStateManager.glGetError();
+        
+        return extensions = list;
+    }
+    
+    private static boolean isCoreProfile() {
+        if (!GLContext.getCapabilities().OpenGL32) return false;
+        
+        int mask = GlStateManager.glGetInteger(GL32.GL_CONTEXT_PROFILE_MASK);
+        GlStateManager.glGetError();
+        return (mask & GL32.GL_CONTEXT_CORE_PROFILE_BIT) != 0;
+    }
+}
@@ -0,0 +1,64 @@
+package pw.lemmmy.schws;
+
+import java.util.concurrent.TimeUnit;
+
+// Records frame times over a window of normal play, so the survey shows how the game actually runs on each machine
+// rather than just what hardware it has. Fed the render thread's RenderTickEvent timestamps: the time from one frame's
+// start to the next is the whole frame, including the tick, the buffer swap and any vsync wait, and the time from start
+// to end is the part spent rendering. Nothing is allocated per frame, and it's only ever touched on the render thread
+// until the window has closed.
+class FrameTimeRecorder {
+    // below 20 fps, a frame long enough to notice as a hitch
+    private static final long STUTTER_MICROS = 50_000;
+    
+    private final LatencyHistogram frames = new LatencyHistogram(), rendering = new LatencyHistogram();
+    
+    private boolean recording = false, finished = false;
+    private long frameStart = -1, renderStart = -1, stutters = 0;
+    
+    // Opens the window, or carries on with it after a dimension change. Does nothing once the window has closed.
+    void start() {
+        if (finished) return;
+        recording = true;
+        
+        // the gap while the world loaded isn't a frame
+        frameStart = renderStart = -1;
+    }
+    
+    // Closes the window for good, frames aren't recorded again afterwards
+    void stop() {
+        recording = false;
+        finished = true;
+    }
+    
+    void onFrameStart(long nanos) {
+        if (!recording) return;
+        
+        if (frameStart >= 0) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos - frameStart);
+            frames.record(micros);
+            if (micros >= STUTTER_MICROS) stutters++;
+        }
+        frameStart = renderStart = nanos;
+    }
+    
+    void onFrameEnd(long nanos) {
+        if (!recording || renderStart < 0) return;
+        
+        rendering.record(TimeUnit.NANOSECONDS.toMicros(nanos - renderStart));
+        renderStart = -1;
+    }
+    
+    // All in µs. Must only be called once the window has closed, from a thread that was handed over to afterwards.
+    void collect(StatRecord stats) {
+        if (frames.getCount() == 0) return;
+        
+        stats.putLong("frame_count", frames.getCount());
+        stats.putLong("frame_time_p50", frames.getPercentile(0.50));
+        stats.putLong("frame_time_p95", frames.getPercentile(0.95));
+        stats.putLong("frame_time_p99", frames.getPercentile(0.99));
+        stats.putLong("frame_time_max", frames.getMax());
+        stats.putLong("frame_stutters", stutters);
+        stats.putLong("frame_render_p95", rendering.getPercentile(0.95));
+    }
+}
@@ -0,0 +1,345 @@
+package pw.lemmmy.schws;
+
+import java.util.*;
+
+// Maps each GL extension we track to a stable bit index, so the capabilities can be submitted as a compact bitset
+// rather than hundreds of "gl_caps[...]" = "true"/"false" strings. This doubles as the shared dictionary for the
+// driver's extension list: known extensions are sent as bits, and only unknown ones are sent as strings. The backend
+// keeps a copy of this list in backend/gl_caps.json to expand the bitset back into the named flags.
+final class GLCapsRegistry {
+    static final String VERSION_STAT = "gl_caps_version";
+    static final String BITS_STAT = "gl_caps_bits";
+    
+    // Append only! An extension's position in this list is its bit index, and each registry version covers the
+    // first VERSION_LENGTHS[version] entries.
+    private static final String[] CAPS = {
+        "ARB_ES2_compatibility",
+        "ARB_ES3_1_compatibility",
+        "ARB_ES3_compatibility",
+        "ARB_arrays_of_arrays",
+        "ARB_base_instance",
+        "ARB_bindless_texture",
+        "ARB_blend_func_extended",
+        "ARB_buffer_storage",
+        "ARB_cl_event",
+        "ARB_clear_buffer_object",
+        "ARB_clear_texture",
+        "ARB_clip_control",
+        "ARB_color_buffer_float",
+        "ARB_compatibility",
+        "ARB_compressed_texture_pixel_storage",
+        "ARB_compute_shader",
+        "ARB_compute_variable_group_size",
+        "ARB_conditional_render_inverted",
+        "ARB_conservative_depth",
+        "ARB_copy_buffer",
+        "ARB_copy_image",
+        "ARB_cull_distance",
+        "ARB_debug_output",
+        "ARB_depth_buffer_float",
+        "ARB_depth_clamp",
+        "ARB_depth_texture",
+        "ARB_derivative_control",
+        "ARB_direct_state_access",
+        "ARB_draw_buffers",
+        "ARB_draw_buffers_blend",
+        "ARB_draw_elements_base_vertex",
+        "ARB_draw_indirect",
+        "ARB_draw_instanced",
+        "ARB_enhanced_layouts",
+        "ARB_explicit_attrib_location",
+        "ARB_explicit_uniform_location",
+        "ARB_fragment_coord_conventions",
+        "ARB_fragment_layer_viewport",
+        "ARB_fragment_program",
+        "ARB_fragment_program_shadow",
+        "ARB_fragment_shader",
+        "ARB_framebuffer_no_attachments",
+        "ARB_framebuffer_object",
+        "ARB_framebuffer_sRGB",
+        "ARB_geometry_shader4",
+        "ARB_get_program_binary",
+        "ARB_get_texture_sub_image",
+        "ARB_gpu_shader5",
+        "ARB_gpu_shader_fp64",
+        "ARB_half_float_pixel",
+        "ARB_half_float_vertex",
+        "ARB_imaging",
+        "ARB_indirect_parameters",
+        "ARB_instanced_arrays",
+        "ARB_internalformat_query",
+        "ARB_internalformat_query2",
+        "ARB_invalidate_subdata",
+        "ARB_map_buffer_alignment",
+        "ARB_map_buffer_range",
+        "ARB_matrix_palette",
+        "ARB_multi_bind",
+        "ARB_multi_draw_indirect",
+        "ARB_multisample",
+        "ARB_multitexture",
+        "ARB_occlusion_query",
+        "ARB_occlusion_query2",
+        "ARB_pipeline_statistics_query",
+        "ARB_pixel_buffer_object",
+        "ARB_point_parameters",
+        "ARB_point_sprite",
+        "ARB_program_interface_query",
+        "ARB_provoking_vertex",
+        "ARB_query_buffer_object",
+        "ARB_robust_buffer_access_behavior",
+        "ARB_robustness",
+        "ARB_robustness_isolation",
+        "ARB_sample_shading",
+        "ARB_sampler_objects",
+        "ARB_seamless_cube_map",
+        "ARB_seamless_cubemap_per_texture",
+        "ARB_separate_shader_objects",
+        "ARB_shader_atomic_counters",
+        "ARB_shader_bit_encoding",
+        "ARB_shader_draw_parameters",
+        "ARB_shader_group_vote",
+        "ARB_shader_image_load_store",
+        "ARB_shader_image_size",
+        "ARB_shader_objects",
+        "ARB_shader_precision",
+        "ARB_shader_stencil_export",
+        "ARB_shader_storage_buffer_object",
+        "ARB_shader_subroutine",
+        "ARB_shader_texture_image_samples",
+        "ARB_shader_texture_lod",
+        "ARB_shading_language_100",
+        "ARB_shading_language_420pack",
+        "ARB_shading_language_include",
+        "ARB_shading_language_packing",
+        "ARB_shadow",
+        "ARB_shadow_ambient",
+        "ARB_sparse_buffer",
+        "ARB_sparse_texture",
+        "ARB_stencil_texturing",
+        "ARB_sync",
+        "ARB_tessellation_shader",
+        "ARB_texture_barrier",
+        "ARB_texture_border_clamp",
+        "ARB_texture_buffer_object",
+        "ARB_texture_buffer_object_rgb32",
+        "ARB_texture_buffer_range",
+        "ARB_texture_compression",
+        "ARB_texture_compression_bptc",
+        "ARB_texture_compression_rgtc",
+        "ARB_texture_cube_map",
+        "ARB_texture_cube_map_array",
+        "ARB_texture_env_add",
+        "ARB_texture_env_combine",
+        "ARB_texture_env_crossbar",
+        "ARB_texture_env_dot3",
+        "ARB_texture_float",
+        "ARB_texture_gather",
+        "ARB_texture_mirror_clamp_to_edge",
+        "ARB_texture_mirrored_repeat",
+        "ARB_texture_multisample",
+        "ARB_texture_non_power_of_two",
+        "ARB_texture_query_levels",
+        "ARB_texture_query_lod",
+        "ARB_texture_rectangle",
+        "ARB_texture_rg",
+        "ARB_texture_rgb10_a2ui",
+        "ARB_texture_stencil8",
+        "ARB_texture_storage",
+        "ARB_texture_storage_multisample",
+        "ARB_texture_swizzle",
+        "ARB_texture_view",
+        "ARB_timer_query",
+        "ARB_transform_feedback2",
+        "ARB_transform_feedback3",
+        "ARB_transform_feedback_instanced",
+        "ARB_transform_feedback_overflow_query",
+        "ARB_transpose_matrix",
+        "ARB_uniform_buffer_object",
+        "ARB_vertex_array_bgra",
+        "ARB_vertex_array_object",
+        "ARB_vertex_attrib_64bit",
+        "ARB_vertex_attrib_binding",
+        "ARB_vertex_blend",
+        "ARB_vertex_buffer_object",
+        "ARB_vertex_program",
+        "ARB_vertex_shader",
+        "ARB_vertex_type_10f_11f_11f_rev",
+        "ARB_vertex_type_2_10_10_10_rev",
+        "ARB_viewport_array",
+        "ARB_window_pos",
+        "EXT_Cg_shader",
+        "EXT_abgr",
+        "EXT_bgra",
+        "EXT_bindable_uniform",
+        "EXT_blend_color",
+        "EXT_blend_equation_separate",
+        "EXT_blend_func_separate",
+        "EXT_blend_minmax",
+        "EXT_blend_subtract",
+        "EXT_compiled_vertex_array",
+        "EXT_depth_bounds_test",
+        "EXT_direct_state_access",
+        "EXT_draw_buffers2",
+        "EXT_draw_instanced",
+        "EXT_draw_range_elements",
+        "EXT_fog_coord",
+        "EXT_framebuffer_blit",
+        "EXT_framebuffer_multisample",
+        "EXT_framebuffer_multisample_blit_scaled",
+        "EXT_framebuffer_object",
+        "EXT_framebuffer_sRGB",
+        "EXT_geometry_shader4",
+        "EXT_gpu_program_parameters",
+        "EXT_gpu_shader4",
+        "EXT_multi_draw_arrays",
+        "EXT_packed_depth_stencil",
+        "EXT_packed_float",
+        "EXT_packed_pixels",
+        "EXT_paletted_texture",
+        "EXT_pixel_buffer_object",
+        "EXT_point_parameters",
+        "EXT_provoking_vertex",
+        "EXT_rescale_normal",
+        "EXT_secondary_color",
+        "EXT_separate_shader_objects",
+        "EXT_separate_specular_color",
+        "EXT_shader_image_load_store",
+        "EXT_shadow_funcs",
+        "EXT_shared_texture_palette",
+        "EXT_stencil_clear_tag",
+        "EXT_stencil_two_side",
+        "EXT_stencil_wrap",
+        "EXT_texture_3d",
+        "EXT_texture_array",
+        "EXT_texture_buffer_object",
+        "EXT_texture_compression_latc",
+        "EXT_texture_compression_rgtc",
+        "EXT_texture_compression_s3tc",
+        "EXT_texture_env_combine",
+        "EXT_texture_env_dot3",
+        "EXT_texture_filter_anisotropic",
+        "EXT_texture_integer",
+        "EXT_texture_lod_bias",
+        "EXT_texture_mirror_clamp",
+        "EXT_texture_rectangle",
+        "EXT_texture_sRGB",
+        "EXT_texture_sRGB_decode",
+        "EXT_texture_shared_exponent",
+        "EXT_texture_snorm",
+        "EXT_texture_swizzle",
+        "EXT_timer_query",
+        "EXT_transform_feedback",
+        "EXT_vertex_array_bgra",
+        "EXT_vertex_attrib_64bit",
+        "EXT_vertex_shader",
+        "EXT_vertex_weighting",
+        
+        // version 2: vendor and newer extensions, now that the full driver extension list is read
+        "NVX_gpu_memory_info",
+        "NV_bindless_multi_draw_indirect",
+        "NV_bindless_texture",
+        "NV_command_list",
+        "NV_conservative_raster",
+        "NV_copy_image",
+        "NV_draw_texture",
+        "NV_fence",
+        "NV_gpu_shader5",
+        "NV_mesh_shader",
+        "NV_primitive_restart",
+        "NV_shader_buffer_load",
+        "NV_texture_barrier",
+        "NV_vertex_buffer_unified_memory",
+        "AMD_debug_output",
+        "AMD_multi_draw_indirect",
+        "AMD_pinned_memory",
+        "AMD_query_buffer_object",
+        "AMD_seamless_cubemap_per_texture",
+        "AMD_shader_trinary_minmax",
+        "AMD_vertex_shader_layer",
+        "ATI_meminfo",
+        "ATI_texture_float",
+        "INTEL_conservative_rasterization",
+        "INTEL_fragment_shader_ordering",
+        "INTEL_map_texture",
+        "INTEL_performance_query",
+        "KHR_blend_equation_advanced",
+        "KHR_debug",
+        "KHR_no_error",
+        "KHR_parallel_shader_compile",
+        "KHR_robustness",
+        "KHR_texture_compression_astc_ldr",
+        "ARB_fragment_shader_interlock",
+        "ARB_gl_spirv",
+        "ARB_gpu_shader_int64",
+        "ARB_parallel_shader_compile",
+        "ARB_polygon_offset_clamp",
+        "ARB_post_depth_coverage",
+        "ARB_shader_atomic_counter_ops",
+        "ARB_shader_ballot",
+        "ARB_shader_clock",
+        "ARB_shader_viewport_layer_array",
+        "ARB_sparse_texture2",
+        "ARB_spirv_extensions",
+        "ARB_texture_filter_anisotropic",
+        "EXT_debug_label",
+        "EXT_debug_marker",
+        "EXT_memory_object",
+        "EXT_polygon_offset_clamp",
+        "EXT_semaphore",
+        "EXT_shader_framebuffer_fetch",
+        "EXT_texture_sRGB_R8",
+        "EXT_window_rectangles"
+    };
+    private static final int[] VERSION_LENGTHS = { 0, 220, 274 };
+    static final int VERSION = VERSION_LENGTHS.length - 1;
+    
+    private static final Map<String, Integer> INDICES = new HashMap<>();
+    static {
+        for (int i = 0; i < CAPS.length; i++) INDICES.put(CAPS[i], i);
+    }
+    
+    private GLCapsRegistry() {}
+    
+    static int size() {
+        return VERSION_LENGTHS[VERSION];
+    }
+    
+    // How many capabilities the given registry version knows about
+    static int getLength(int version) {
+        return VERSION_LENGTHS[version];
+    }
+    
+    static String getName(int index) {
+        return CAPS[index];
+    }
+    
+    // Returns the bit index of an extension name without its "GL_" prefix, or -1 if it is not in the registry
+    static int indexOf(String name) {
+        return INDICES.getOrDefault(name, -1);
+    }
+    
+    static String encode(BitSet bits) {
+        return Base64.getEncoder().encodeToString(bits.toByteArray());
+    }
+    
+    // Expands a submitted bitset back into the named "gl_caps[...]" flags, or returns an empty map if the version is
+    // not one this registry knows about
+    static Map<String, String> expand(String version, String encoded) {
+        Map<String, String> flags = new LinkedHashMap<>();
+        
+        int length;
+        try {
+            int v = Integer.parseInt(version);
+            if (v < 0 || v >= VERSION_LENGTHS.length) return flags;
+            length = VERSION_LENGTHS[v];
+        } catch (NumberFormatException e) {
+            return flags;
+        }
+        
+        BitSet bits = BitSet.valueOf(Base64.getDecoder().decode(encoded));
+        for (int i = 0; i < length; i++) {
+            flags.put(String.format("gl_caps[%s]", CAPS[i]), Boolean.toString(bits.get(i)));
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,36 @@
+package pw.lemmmy.schws;
+
+import java.util.BitSet;
+
+// Interns the driver's extension list against GLCapsRegistry: known extensions become bits in gl_caps_bits, and only
+// the ones the registry doesn't know about are sent by name, as gl_ext[i].
+class GLExtensionCollector {
+    // Some drivers report hundreds of extensions, so don't let a strange one blow up the payload
+    private static final int MAX_UNKNOWN = 128;
+    
+    private final GLExtensionSource source;
+    
+    GLExtensionCollector(GLExtensionSource source) {
+        this.source = source;
+    }
+    
+    void collect(StatRecord stats) {
+        BitSet bits = new BitSet(GLCapsRegistry.size());
+        int unknown = 0;
+        
+        for (String extension : source.getExtensions()) {
+            String name = extension.startsWith("GL_") ? extension.substring(3) : extension;
+            
+            int index = GLCapsRegistry.indexOf(name);
+            if (index >= 0) {
+                bits.set(index);
+            } else if (unknown < MAX_UNKNOWN) {
+                stats.putString(String.format("gl_ext[%d]", unknown++), extension);
+            }
+        }
+        
+        stats.putLong("gl_exts", unknown);
+        stats.putLong(GLCapsRegistry.VERSION_STAT, GLCapsRegistry.VERSION);
+        stats.putString(GLCapsRegistry.BITS_STAT, GLCapsRegistry.encode(bits));
+    }
+}
@@ -0,0 +1,10 @@
+package pw.lemmmy.schws;
+
+import java.util.Collection;
+
+// Where the GL extension list comes from. The live implementation asks the driver, but a recorded list can stand in
+// for it so the extension collector can be exercised without a GL context.
+interface GLExtensionSource {
+    // Extension names as reported by the driver, e.g. "GL_ARB_buffer_storage"
+    Collection<String> getExtensions();
+}
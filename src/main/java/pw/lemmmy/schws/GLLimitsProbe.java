@@ -0,0 +1,118 @@
+package pw.lemmmy.schws;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Queries the GL implementation limits that decide the renderer's fast paths, in a single pass. Queries the context
+// can't support are skipped up front based on the GL version and extensions, the error queue is only checked once for
+// the whole batch, and anything that still turns out to be unsupported is reported in gl_limits_unsupported.
+class GLLimitsProbe {
+    private static final int GL_VERSION = 0x1F02;
+    private static final Pattern VERSION = Pattern.compile("^(\\d+)\\.(\\d+)");
+    
+    // Drivers keep one flag per error type, so this is plenty to empty the queue
+    private static final int MAX_ERRORS = 16;
+    
+    private static final Limit[] LIMITS = {
+        new Limit("gl_caps[gl_max_vertex_uniforms]", 0x8B4A, 20),
+        new Limit("gl_caps[gl_max_fragment_uniforms]", 0x8B49, 20),
+        new Limit("gl_caps[gl_max_vertex_attribs]", 0x8869, 20),
+        new Limit("gl_caps[gl_max_vertex_texture_image_units]", 0x8B4C, 20),
+        new Limit("gl_caps[gl_max_texture_image_units]", 0x8872, 20),
+        new Limit("gl_caps[gl_max_array_texture_layers]", 0x88FF, 30, "GL_EXT_texture_array"),
+        new Limit("gl_caps[gl_max_samples]", 0x8D57, 30, "GL_ARB_framebuffer_object", "GL_EXT_framebuffer_multisample"),
+        new Limit("gl_caps[gl_max_texture_buffer_size]", 0x8C2B, 31, "GL_ARB_texture_buffer_object", "GL_EXT_texture_buffer_object"),
+        new Limit("gl_caps[gl_max_uniform_block_size]", 0x8A30, 31, "GL_ARB_uniform_buffer_object"),
+        new Limit("gl_caps[gl_max_shader_storage_block_size]", 0x90DE, 43, "GL_ARB_shader_storage_buffer_object"),
+        // VRAM, in KiB
+        new Limit("opengl_memory", 0x9048, Integer.MAX_VALUE, "GL_NVX_gpu_memory_info"),
+        new Limit("opengl_memory_available", 0x9049, Integer.MAX_VALUE, "GL_NVX_gpu_memory_info"),
+        new Limit("opengl_memory_available_ati", 0x87FC, Integer.MAX_VALUE, "GL_ATI_meminfo"),
+    };
+    
+    private final GlQuerySource gl;
+    
+    GLLimitsProbe(GlQuerySource gl) {
+        this.gl = gl;
+    }
+    
+    void collect(StatRecord stats) {
+        int version = parseVersion(gl.getString(GL_VERSION));
+        
+        List<Limit> queried = new ArrayList<>();
+        List<String> unsupported = new ArrayList<>();
+        for (Limit limit : LIMITS) {
+            if (limit.isSupported(gl, version)) queried.add(limit);
+            else unsupported.add(limit.getShortName());
+        }
+        
+        // don't let errors left behind by earlier GL calls be blamed on this batch
+        drainErrors();
+        
+        int[] values = new int[queried.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = gl.getInteger(queried.get(i).pname);
+        }
+        
+        boolean[] failed = new boolean[values.length];
+        if (gl.getError() != GlQuerySource.GL_NO_ERROR) {
+            // something in the batch was rejected anyway, so go back and find out which
+            drainErrors();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = gl.getInteger(queried.get(i).pname);
+                failed[i] = drainErrors() > 0;
+            }
+        }
+        
+        for (int i = 0; i < values.length; i++) {
+            if (failed[i]) unsupported.add(queried.get(i).getShortName());
+            else stats.putLong(queried.get(i).stat, values[i]);
+        }
+        
+        if (!unsupported.isEmpty()) stats.putString("gl_limits_unsupported", String.join(",", unsupported));
+    }
+    
+    private int drainErrors() {
+        int count = 0;
+        while (count < MAX_ERRORS && gl.getError() != GlQuerySource.GL_NO_ERROR) count++;
+        return count;
+    }
+    
+    // Returns the GL version as major * 10 + minor, e.g. 4.6.0 becomes 46
+    static int parseVersion(String version) {
+        if (version == null) return 0;
+        
+        Matcher m = VERSION.matcher(version.trim());
+        if (!m.find()) return 0;
+        return Integer.parseInt(m.group(1)) * 10 + Math.min(9, Integer.parseInt(m.group(2)));
+    }
+    
+    private static class Limit {
+        private final String stat;
+        private final int pname;
+        private final int coreVersion;
+        private final String[] extensions;
+        
+        // Supported from coreVersion (major * 10 + minor) onwards, or earlier if any of the extensions are present
+        private Limit(String stat, int pname, int coreVersion, String... extensions) {
+            this.stat = stat;
+            this.pname = pname;
+            this.coreVersion = coreVersion;
+            this.extensions = extensions;
+        }
+        
+        // e.g. "gl_max_samples" rather than "gl_caps[gl_max_samples]", to keep gl_limits_unsupported short
+        private String getShortName() {
+            return stat.startsWith("gl_caps[") ? stat.substring(8, stat.length() - 1) : stat;
+        }
+        
+        private boolean isSupported(GlQuerySource gl, int version) {
+            if (version >= coreVersion) return true;
+            for (String extension : extensions) {
+                if (gl.hasExtension(extension)) return true;
+            }
+            return false;
+        }
+    }
+}
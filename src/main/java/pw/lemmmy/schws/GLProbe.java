@@ -0,0 +1,25 @@
+package pw.lemmmy.schws;
+
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraftforge.fml.client.SplashProgress;
+import org.lwjgl.opengl.GL11;
+
+// Holder for the GL collectors, so LWJGL's GL classes are only loaded once the GL collectors actually run
+final class GLProbe {
+    // read once and shared by the collectors that need the extension list
+    private static final DriverExtensionSource EXTENSIONS = new DriverExtensionSource();
+    
+    private GLProbe() {}
+    
+    static void collectOpenGLData(StatRecord stats) {
+        stats.putString("opengl_version", GlStateManager.glGetString(GL11.GL_VERSION));
+        stats.putString("opengl_vendor", GlStateManager.glGetString(GL11.GL_VENDOR));
+    }
+    
+    static void collectOpenGLCaps(StatRecord stats) {
+        stats.putLong("gl_max_texture_size", SplashProgress.getMaxTextureSize());
+        
+        new GLExtensionCollector(EXTENSIONS).collect(stats);
+        new GLLimitsProbe(new LiveGlQuerySource(EXTENSIONS)).collect(stats);
+    }
+}
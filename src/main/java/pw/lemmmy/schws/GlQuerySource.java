@@ -0,0 +1,17 @@
+package pw.lemmmy.schws;
+
+// The handful of GL queries the limits probe needs. The live implementation calls into the driver on the render
+// thread, but a canned implementation can stand in for it so the probe can run without a GPU.
+interface GlQuerySource {
+    int GL_NO_ERROR = 0;
+    
+    String getString(int name);
+    
+    // Behaves like glGetIntegerv: returns the first value, and flags an error if the query isn't supported
+    int getInteger(int pname);
+    
+    int getError();
+    
+    // Takes the name as reported by the driver, e.g. "GL_NVX_gpu_memory_info"
+    boolean hasExtension(String name);
+}
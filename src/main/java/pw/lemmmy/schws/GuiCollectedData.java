@@ -40,6 +40,14 @@ public class GuiCollectedData extends GuiScreen {
         stats.forEach((k, v) -> {
             keys.add(k);
             values.add(v);
+            
+            // show the capability bitset as the named flags it stands for
+            if (k.equals(GLCapsRegistry.BITS_STAT)) {
+                GLCapsRegistry.expand(stats.get(GLCapsRegistry.VERSION_STAT), v).forEach((cap, flag) -> {
+                    keys.add(cap);
+                    values.add(flag);
+                });
+            }
         });
         
         buttonList.add(new GuiButton(
@@ -91,7 +99,7 @@ public class GuiCollectedData extends GuiScreen {
     
         @Override
         protected int getSize() {
-            return stats.size();
+            return keys.size();
         }
     
         @Override
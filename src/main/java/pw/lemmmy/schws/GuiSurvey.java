@@ -27,12 +27,15 @@ public class GuiSurvey extends GuiScreen {
         + "We've collected some basic information about your computer's OS, CPU, GPU and RAM.";
     private static final String LAST_TEXT
         = "Please confirm to \u00a7lanonymously\u00a7r submit this data to our server:";
+    private static final String COLLECTING_TEXT
+        = "\u00a77Collecting data...";
     private static final String SC_URL = "https://hardware.switchcraft.pw";
     
     private final StatsPersistence persistence;
     private final StatsCollector collector;
     
     private ResourceLocation logo;
+    private GuiButton btnViewData, btnConfirm;
     
     public GuiSurvey(StatsPersistence persistence, StatsCollector collector) {
         this.persistence = persistence;
@@ -46,7 +49,7 @@ public class GuiSurvey extends GuiScreen {
         logo = new ResourceLocation(SCHardwareSurvey.MODID, "textures/gui/sc-logo.png");
         
         int y;
-        addButton(getCenteredButton(
+        btnViewData = addButton(getCenteredButton(
             BUTTON_ID_VIEW_DATA,
             width / 2, y = getBtnViewDataY(),
             "View collected data"
@@ -58,16 +61,21 @@ public class GuiSurvey extends GuiScreen {
             (width / 2) - 50, y,
             "\u00a7cDon't send"
         ));
-        addButton(getCenteredButton(
+        btnConfirm = addButton(getCenteredButton(
             BUTTON_ID_CONFIRM,
             (width / 2) + 50, y,
             "\u00a7a\u00a7lConfirm"
         ));
+        
+        btnViewData.enabled = btnConfirm.enabled = collector.isDone();
     }
     
     @Override
     public void updateScreen() {
         super.updateScreen();
+        
+        // wait for the collectors to finish before the data can be viewed or sent
+        btnViewData.enabled = btnConfirm.enabled = collector.isDone();
     }
     
     @Override
@@ -96,7 +104,7 @@ public class GuiSurvey extends GuiScreen {
         y += 18 + PADDING * 2;
         
         // please confirm text
-        drawCenteredString(fontRenderer, LAST_TEXT, width / 2, y, 0xFFFFFF);
+        drawCenteredString(fontRenderer, collector.isDone() ? LAST_TEXT : COLLECTING_TEXT, width / 2, y, 0xFFFFFF);
     
         // URL at bottom
         drawCenteredString(
@@ -0,0 +1,114 @@
+package pw.lemmmy.schws;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Caches the results of the OSHI hardware probe between launches, so warm launches don't need to initialise JNA and
+// enumerate the hardware again. Entries are keyed by a cheap fingerprint of the machine and expire after a while.
+public class HardwareCache {
+    private static final long TTL_MS = TimeUnit.DAYS.toMillis(7);
+    
+    private final File cacheFile;
+    
+    HardwareCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+    
+    static String getFingerprint() {
+        String key = String.join("|",
+            System.getProperty("os.name"),
+            System.getProperty("os.version"),
+            System.getProperty("os.arch"),
+            Integer.toString(Runtime.getRuntime().availableProcessors()),
+            Long.toString(Runtime.getRuntime().maxMemory())
+        );
+        return Integer.toHexString(key.hashCode());
+    }
+    
+    // Returns the cached stats, or null if there is no usable entry for this machine
+    public synchronized Map<String, String> load() {
+        if (!cacheFile.exists()) return null;
+        
+        Properties cache = new Properties();
+        try (BufferedReader br = Files.newBufferedReader(cacheFile.toPath())) {
+            cache.load(br);
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error reading hardware cache file", e);
+            return null;
+        }
+        
+        if (!getFingerprint().equals(cache.getProperty("fingerprint"))) return null;
+        
+        long created;
+        try {
+            created = Long.parseLong(cache.getProperty("created", "0"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (System.currentTimeMillis() - created > TTL_MS) return null;
+        
+        Map<String, String> stats = new LinkedHashMap<>();
+        for (String key : new TreeSet<>(cache.stringPropertyNames())) {
+            if (!key.startsWith("stat.")) continue;
+            String stat = key.substring(5), value = cache.getProperty(key);
+            
+            // written by another version of the mod, so probe again rather than failing to record it
+            if (!isUsable(stat, value)) {
+                SCHardwareSurvey.LOG.info("Hardware cache has a stat this version can't use ({}), probing again", stat);
+                invalidate();
+                return null;
+            }
+            
+            stats.put(stat, value);
+        }
+        return stats.isEmpty() ? null : stats;
+    }
+    
+    // Whether StatRecord.put would take the stat, strings too long for this version are truncated rather than refused
+    private static boolean isUsable(String stat, String value) {
+        StatDefinition definition = StatRegistry.get(stat);
+        if (definition == null) return false;
+        return definition.type == StatDefinition.Type.STRING || definition.check(value) == null;
+    }
+    
+    public synchronized void store(Map<String, String> stats) {
+        Properties cache = new Properties();
+        cache.setProperty("fingerprint", getFingerprint());
+        cache.setProperty("created", Long.toString(System.currentTimeMillis()));
+        stats.forEach((k, v) -> cache.setProperty("stat." + k, v));
+        
+        // written to a temporary file first, so a crash part way through can't leave a torn cache behind
+        Path target = cacheFile.toPath();
+        Path temp = target.resolveSibling(cacheFile.getName() + ".tmp");
+        
+        try {
+            try (BufferedWriter bw = Files.newBufferedWriter(temp)) {
+                cache.store(bw, "Cached hardware probe results for the SwitchCraft Hardware Survey");
+            }
+            
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error writing hardware cache file", e);
+        }
+    }
+    
+    public synchronized void invalidate() {
+        try {
+            Files.deleteIfExists(cacheFile.toPath());
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error deleting hardware cache file", e);
+        }
+    }
+}
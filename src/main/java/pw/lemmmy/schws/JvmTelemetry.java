@@ -0,0 +1,58 @@
+package pw.lemmmy.schws;
+
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Snapshots the JVM's own management beans once a world has loaded: which garbage collectors are running and how much
+// they've done, the JIT and its compile time, the peak usage of each memory pool (including Metaspace), and how much
+// memory direct and mapped buffers hold. Together with memory_max, that shows how close players run to their limits.
+final class JvmTelemetry {
+    private JvmTelemetry() {}
+    
+    static void collect(StatRecord stats) {
+        stats.putLong("jvm_uptime", ManagementFactory.getRuntimeMXBean().getUptime());
+        
+        List<String> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.add(gc.getName());
+            
+            // both are -1 if the collector doesn't report them
+            String name = toKey(gc.getName());
+            long count = gc.getCollectionCount(), time = gc.getCollectionTime();
+            if (count >= 0) stats.putLong(String.format("jvm_gc_count[%s]", name), count);
+            if (time >= 0) stats.putLong(String.format("jvm_gc_time[%s]", name), time);
+        }
+        stats.putString("jvm_gc", String.join(",", collectors));
+        
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        if (jit != null) {
+            stats.putString("jvm_jit", jit.getName());
+            if (jit.isCompilationTimeMonitoringSupported()) stats.putLong("jvm_jit_time", jit.getTotalCompilationTime());
+        }
+        
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = toKey(pool.getName());
+            
+            MemoryUsage peak = pool.getPeakUsage();
+            if (peak != null) {
+                stats.putLong(String.format("jvm_pool_peak[%s]", name), peak.getUsed());
+                // -1 when the pool has no limit, as Metaspace usually doesn't
+                if (peak.getMax() >= 0) stats.putLong(String.format("jvm_pool_max[%s]", name), peak.getMax());
+            }
+        }
+        
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            String name = toKey(pool.getName());
+            stats.putLong(String.format("jvm_buffer_count[%s]", name), pool.getCount());
+            stats.putLong(String.format("jvm_buffer_used[%s]", name), pool.getMemoryUsed());
+        }
+    }
+    
+    // Bean names like "G1 Old Generation" or "CodeHeap 'non-nmethods'" become G1_Old_Generation and
+    // CodeHeap_non_nmethods, so they are safe to use inside a stat key on the backend
+    static String toKey(String name) {
+        String key = name.replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "");
+        return key.isEmpty() ? "unknown" : key;
+    }
+}
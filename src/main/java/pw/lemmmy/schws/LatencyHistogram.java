@@ -0,0 +1,87 @@
+package pw.lemmmy.schws;
+
+import java.util.Arrays;
+
+// A fixed-size log-linear histogram of durations in microseconds, in the style of HdrHistogram: values below 32 get a
+// bucket each, and every power of two above that is split into 16 equal buckets, so any recorded value is known to
+// within about 6%. The buckets are a single primitive array allocated up front - recording a value is an index
+// calculation and an increment, with no boxing or allocation - so it can sit on the render thread and be fed every
+// frame. Not thread safe; values must be recorded and read on the same thread, or handed over safely.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    // anything longer is clamped, a little over half an hour is already well past any frame or tick worth measuring
+    static final long MAX_VALUE = Integer.MAX_VALUE;
+    static final int BUCKETS = getIndex(MAX_VALUE) + 1;
+    
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0, max = 0;
+    
+    void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        counts[getIndex(value)]++;
+        count++;
+        if (value > max) max = value;
+    }
+    
+    void reset() {
+        Arrays.fill(counts, 0);
+        count = max = 0;
+    }
+    
+    // Copies another histogram's buckets into this one, replacing whatever it held
+    void copyFrom(long[] counts, long count, long max) {
+        System.arraycopy(counts, 0, this.counts, 0, BUCKETS);
+        this.count = count;
+        this.max = max;
+    }
+    
+    // Adds another histogram's values to this one, e.g. to combine per-thread histograms once they're done
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+    
+    long getCount() {
+        return count;
+    }
+    
+    long getMax() {
+        return max;
+    }
+    
+    // The smallest value that at least the given fraction of recorded values are less than or equal to, rounded up to
+    // the top of its bucket (but never past the largest value actually recorded), or 0 if nothing has been recorded
+    long getPercentile(double fraction) {
+        if (count == 0) return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(fraction * count)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, getUpperBound(i));
+        }
+        return max;
+    }
+    
+    // Below 2 * SUB_BUCKETS each value is its own bucket. Above that, a value with its highest bit at position m is
+    // shifted down until it fits in [SUB_BUCKETS, 2 * SUB_BUCKETS), and the shift picks the power-of-two range.
+    static int getIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+    
+    static long getLowerBound(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+    
+    static long getUpperBound(int index) {
+        return index + 1 < BUCKETS ? getLowerBound(index + 1) - 1 : MAX_VALUE;
+    }
+}
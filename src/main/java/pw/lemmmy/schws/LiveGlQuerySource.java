@@ -0,0 +1,32 @@
+package pw.lemmmy.schws;
+
+import net.minecraft.client.renderer.GlStateManager;
+
+// Must only be used from the render thread
+class LiveGlQuerySource implements GlQuerySource {
+    private final GLExtensionSource extensions;
+    
+    LiveGlQuerySource(GLExtensionSource extensions) {
+        this.extensions = extensions;
+    }
+    
+    @Override
+    public String getString(int name) {
+        return GlStateManager.glGetString(name);
+    }
+    
+    @Override
+    public int getInteger(int pname) {
+        return GlStateManager.glGetInteger(pname);
+    }
+    
+    @Override
+    public int getError() {
+        return GlStateManager.glGetError();
+    }
+    
+    @Override
+    public boolean hasExtension(String name) {
+        return extensions.getExtensions().contains(name);
+    }
+}
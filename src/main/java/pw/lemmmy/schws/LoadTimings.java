@@ -0,0 +1,110 @@
+package pw.lemmmy.schws;
+
+import net.minecraft.client.Minecraft;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+// How long players wait before they can play: the launch up to each FML loading phase reaching this mod, and then for
+// the first world joined this session, the time from the world loading to the first player tick, the first frame drawn
+// with nothing in front of the world, and the first JOIN_CHUNKS chunk sections being drawn. FML runs each phase for
+// every mod in turn, so the gap between this mod's own handlers is close to the length of the phase as a whole.
+// Everything happens on the client thread, until the world collectors are handed the results.
+class LoadTimings {
+    // roughly the player's immediate surroundings, even at a low render distance
+    private static final int JOIN_CHUNKS = 64;
+    
+    // stop looking for the chunks if they haven't arrived by then, e.g. in a void world
+    private static final long JOIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+    
+    // Reading the chunk count formats and parses a string, so it's only done this often rather than every frame while
+    // joining, which would add garbage to the very frames being timed. The join_chunks figure is late by up to this.
+    private static final long CHUNK_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private long preInit = -1, init = -1, postInit = -1, loadComplete = -1;
+    private long launchMillis = -1;
+    
+    private long joinStart = -1, firstTick = -1, firstFrame = -1, chunks = -1;
+    private long nextChunkSample = -1;
+    private boolean joining = false;
+    
+    void onPreInit() {
+        launchMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        preInit = System.nanoTime();
+    }
+    
+    void onInit() {
+        init = System.nanoTime();
+    }
+    
+    void onPostInit() {
+        postInit = System.nanoTime();
+    }
+    
+    void onLoadComplete() {
+        loadComplete = System.nanoTime();
+    }
+    
+    // Only the first world of the session counts, later joins and dimension changes are usually much quicker
+    void onWorldLoad(long nanos) {
+        if (joinStart >= 0) return;
+        joinStart = nanos;
+        joining = true;
+    }
+    
+    void onPlayerTick(long nanos) {
+        if (joining && firstTick < 0) firstTick = nanos;
+    }
+    
+    void onFrameEnd(long nanos, Minecraft mc) {
+        if (!joining) return;
+        
+        // the loading terrain screen covers the world until the server has sent the player's surroundings
+        if (firstFrame < 0 && mc.player != null && mc.currentScreen == null) firstFrame = nanos;
+        
+        if (firstFrame < 0 || nanos < nextChunkSample) return;
+        nextChunkSample = nanos + CHUNK_SAMPLE_NANOS;
+        
+        int rendered = getRenderedChunks(mc);
+        if (rendered >= JOIN_CHUNKS) {
+            chunks = nanos;
+            joining = false;
+        } else if (rendered < 0 || nanos - joinStart > JOIN_TIMEOUT_NANOS) {
+            // a mod changed the F3 line so it can't be read, or the chunks never arrived
+            joining = false;
+        }
+    }
+    
+    // The number of chunk sections drawn last frame isn't exposed directly (RenderGlobal's own count is protected), but
+    // it leads the F3 screen's "C: 123/4096 ..." line, e.g. "C: 123/4096 (s) D: 8, L: 0, ...". Returns -1 if that
+    // couldn't be read.
+    private int getRenderedChunks(Minecraft mc) {
+        String info = mc.renderGlobal.getDebugInfoRenders();
+        if (info == null || !info.startsWith("C: ")) return -1;
+        
+        int end = info.indexOf('/');
+        if (end < 0) return -1;
+        
+        try {
+            return Integer.parseInt(info.substring(3, end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    // All in ms, stats for anything that didn't happen are left out
+    void collect(StatRecord stats) {
+        if (launchMillis >= 0) stats.putLong("load_preinit", launchMillis);
+        putDuration(stats, "load_init", preInit, init);
+        putDuration(stats, "load_postinit", init, postInit);
+        putDuration(stats, "load_complete", postInit, loadComplete);
+        
+        putDuration(stats, "join_first_tick", joinStart, firstTick);
+        putDuration(stats, "join_first_frame", joinStart, firstFrame);
+        putDuration(stats, "join_chunks", joinStart, chunks);
+    }
+    
+    private static void putDuration(StatRecord stats, String key, long start, long end) {
+        if (start >= 0 && end >= 0) stats.putLong(key, TimeUnit.NANOSECONDS.toMillis(end - start));
+    }
+}
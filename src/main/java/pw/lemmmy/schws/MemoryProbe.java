@@ -0,0 +1,192 @@
+package pw.lemmmy.schws;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Measures memory speed, which is what actually limits chunk meshing and buffer uploads: sequential read and write
+// bandwidth over a direct buffer, and the latency of dependent random reads (pointer chasing) over working sets sized
+// to land in L2, the last level cache and main memory. Everything happens in one off-heap buffer that is freed again
+// before returning, so the probe leaves nothing behind on or off the heap.
+class MemoryProbe {
+    // several times the last level cache of current consumer CPUs, which goes up to 96 MiB on the X3D parts, so the
+    // bandwidth and main memory figures aren't served from cache
+    private static final int BUFFER_SIZE = 256 << 20;
+    
+    // one pointer per cache line, so every step of the chase is a separate line
+    private static final int LINE = 64;
+    private static final int PAGE = 4 << 10;
+    private static final int LINES_PER_PAGE = PAGE / LINE;
+    
+    private static final String[] LEVELS = { "l2", "llc", "dram" };
+    private static final int[] WORKING_SETS = { 128 << 10, 4 << 20, BUFFER_SIZE };
+    
+    // bytes and steps between deadline checks, a millisecond or less even on slow memory
+    private static final int CHUNK = 1 << 20;
+    private static final int CHASE_CHUNK = 1 << 12;
+    
+    private static volatile long sink;
+    
+    private final long budgetNanos;
+    
+    MemoryProbe(long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+    
+    void collect(StatRecord stats) throws InterruptedException {
+        // allocating and linking the buffer takes real time too, so each measurement gets an equal share of whatever
+        // is left of the budget rather than a fixed slice
+        long deadline = System.nanoTime() + budgetNanos;
+        int remaining = 2 + LEVELS.length;
+        
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+        } catch (OutOfMemoryError e) {
+            SCHardwareSurvey.LOG.warn("Not enough direct memory for the memory probe, skipping it");
+            return;
+        }
+        
+        try {
+            SplittableRandom random = new SplittableRandom();
+            
+            // In-game the probe only ever runs once, so each loop is run untimed before it's measured to give the JIT
+            // a chance to compile it, like CpuBenchmark does. Otherwise the figures are mostly interpreter overhead.
+            long warmUp = budgetNanos / 24;
+            
+            // in picoseconds per dependent load, main memory first as its chain takes a whole pass over the buffer to
+            // build, and that pass may not fit in the budget if allocating the buffer was slow
+            for (int i = LEVELS.length - 1; i >= 0; i--) {
+                if (!buildChain(buffer, WORKING_SETS[i] / LINE, random, deadline)) break;
+                if (i == LEVELS.length - 1) measureChase(buffer, warmUp);
+                
+                long latency = measureChase(buffer, getSlice(deadline, remaining--));
+                stats.putLong(String.format("memory_bench_latency_%s", LEVELS[i]), latency);
+            }
+            
+            // in MB/s
+            measureWrite(buffer, warmUp);
+            stats.putLong("memory_bench_write", measureWrite(buffer, getSlice(deadline, remaining--)));
+            measureRead(buffer, warmUp);
+            stats.putLong("memory_bench_read", measureRead(buffer, getSlice(deadline, remaining--)));
+        } finally {
+            DirectBuffers.free(buffer);
+        }
+    }
+    
+    private static long getSlice(long deadline, int remaining) {
+        return Math.max(0, (deadline - System.nanoTime()) / remaining);
+    }
+    
+    private static long measureWrite(ByteBuffer buffer, long nanos) throws InterruptedException {
+        long start = System.nanoTime(), deadline = start + nanos, bytes = 0;
+        int offset = 0;
+        
+        do {
+            if (Thread.interrupted()) throw new InterruptedException();
+            writeChunk(buffer, offset);
+            offset = (offset + CHUNK) % BUFFER_SIZE;
+            bytes += CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        return toMegabytesPerSecond(bytes, System.nanoTime() - start);
+    }
+    
+    private static long measureRead(ByteBuffer buffer, long nanos) throws InterruptedException {
+        long start = System.nanoTime(), deadline = start + nanos, bytes = 0, sum = 0;
+        int offset = 0;
+        
+        do {
+            if (Thread.interrupted()) throw new InterruptedException();
+            sum += readChunk(buffer, offset);
+            offset = (offset + CHUNK) % BUFFER_SIZE;
+            bytes += CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        sink ^= sum;
+        return toMegabytesPerSecond(bytes, System.nanoTime() - start);
+    }
+    
+    // the loops are kept in their own small methods so they're compiled as a whole, rather than only through
+    // on-stack replacement of the outer loop
+    private static void writeChunk(ByteBuffer buffer, int from) {
+        for (int i = from; i < from + CHUNK; i += 8) buffer.putLong(i, i);
+    }
+    
+    private static long readChunk(ByteBuffer buffer, int from) {
+        long sum = 0;
+        for (int i = from; i < from + CHUNK; i += 8) sum += buffer.getLong(i);
+        return sum;
+    }
+    
+    private static long toMegabytesPerSecond(long bytes, long nanos) {
+        return (long) (bytes / (nanos / 1e9) / (1 << 20));
+    }
+    
+    // Links the first `lines` cache lines into a single cycle, with each line holding the index of the next. The cycle
+    // takes one line from every page in a random page order, then moves on to the next line offset in a random offset
+    // order, so consecutive loads never share a page and no prefetcher can guess the next one. Each page is written
+    // in one go, so even the main memory chain takes little more than a sequential pass to build, where shuffling
+    // millions of lines in place would take longer than the whole budget. Returns false if the deadline passes first.
+    private static boolean buildChain(ByteBuffer buffer, int lines, SplittableRandom random, long deadline)
+        throws InterruptedException {
+        int pages = lines / LINES_PER_PAGE;
+        int[] order = shuffle(pages, random), offsets = shuffle(LINES_PER_PAGE, random);
+        
+        // the offset each round's last line leads on to, with the last round leading back to the first
+        int[] nextOffsets = new int[LINES_PER_PAGE];
+        for (int i = 0; i < LINES_PER_PAGE; i++) nextOffsets[offsets[i]] = offsets[(i + 1) % LINES_PER_PAGE];
+        
+        for (int i = 0; i < pages; i++) {
+            if (i % (CHUNK / PAGE) == 0) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (System.nanoTime() >= deadline) return false;
+            }
+            
+            int page = order[i] * LINES_PER_PAGE;
+            for (int offset = 0; offset < LINES_PER_PAGE; offset++) {
+                int next = i + 1 < pages
+                    ? order[i + 1] * LINES_PER_PAGE + offset
+                    : order[0] * LINES_PER_PAGE + nextOffsets[offset];
+                buffer.putInt((page + offset) * LINE, next);
+            }
+        }
+        
+        return true;
+    }
+    
+    private static int[] shuffle(int length, SplittableRandom random) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) values[i] = i;
+        
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1), value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        
+        return values;
+    }
+    
+    // Average time of each step through the chain, in picoseconds. Every load depends on the one before, so the CPU
+    // can't overlap them and the time is the latency of wherever the working set lives.
+    private static long measureChase(ByteBuffer buffer, long nanos) throws InterruptedException {
+        long start = System.nanoTime(), deadline = start + nanos, steps = 0;
+        int p = 0;
+        
+        do {
+            if (Thread.interrupted()) throw new InterruptedException();
+            p = chaseChunk(buffer, p);
+            steps += CHASE_CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        sink ^= p;
+        return (System.nanoTime() - start) * 1000 / steps;
+    }
+    
+    private static int chaseChunk(ByteBuffer buffer, int p) {
+        for (int i = 0; i < CHASE_CHUNK; i++) p = buffer.getInt(p * LINE);
+        return p;
+    }
+}
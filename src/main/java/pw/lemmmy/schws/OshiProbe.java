@@ -0,0 +1,26 @@
+package pw.lemmmy.schws;
+
+import oshi.SystemInfo;
+import oshi.hardware.HardwareAbstractionLayer;
+import oshi.hardware.Memory;
+import oshi.hardware.Processor;
+
+// Holder for the OSHI hardware probe, so OSHI and its JNA bindings are only loaded when the probe actually runs
+final class OshiProbe {
+    private OshiProbe() {}
+    
+    static StatRecord probe() {
+        StatRecord stats = new StatRecord();
+        
+        // based on OpenGlHelper.getCpu(), which is not available at runtime for some reason...
+        HardwareAbstractionLayer hal = new SystemInfo().getHardware();
+        
+        Processor[] processor = hal.getProcessors();
+        stats.putString("cpu_model", String.format("%dx %s", processor.length, processor[0]).replaceAll("\\s+", " "));
+        
+        Memory memory = hal.getMemory();
+        stats.putLong("memory_system_total", memory.getTotal());
+        
+        return stats;
+    }
+}
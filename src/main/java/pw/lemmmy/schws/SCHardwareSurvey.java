@@ -1,9 +1,13 @@
 package pw.lemmmy.schws;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiIngameMenu;
+import net.minecraftforge.client.event.GuiOpenEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLLoadCompleteEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
@@ -11,6 +15,7 @@ import net.minecraftforge.fml.common.gameevent.TickEvent;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
 
 // If you'd like to TeamView me to see what we're doing with this data, feel free to stop by: 531 488 166
 // Tribute to MrSnoopDoge
@@ -24,15 +29,29 @@ public class SCHardwareSurvey {
     @Mod.Instance(MODID)
     public static SCHardwareSurvey INSTANCE;
     
-    private static final int POPUP_DELAY = 200;
+    // the popup appears a random time into the first session, so a modpack release doesn't make every client
+    // submit within the same few minutes
+    private static final int POPUP_DELAY_MIN = 200;
+    private static final int POPUP_DELAY_SPREAD = 20 * 60 * 15;
     
     static Logger LOG;
     File configDir;
     
+    // the window runs from the world loading to the survey screen opening, the same stretch the popup delay counts
+    final FrameTimeRecorder frameTimes = new FrameTimeRecorder();
+    // while a world is loaded, for the whole session
+    final TickTimeRecorder tickTimes = new TickTimeRecorder();
+    // mod loading, then joining the first world of the session
+    final LoadTimings loadTimings = new LoadTimings();
+    // only while session mode is on and something is being collected, read by the submitter thread
+    volatile SessionTelemetry sessionTelemetry;
+    
+    private final StartupReport startupReport = new StartupReport();
+    
     private StatsPersistence persistence;
     private StatsCollector collector;
     private boolean ticking = false, collected = false, dontCollect = false;
-    private long timerTicks = 0;
+    private long timerTicks = 0, popupDelay = 0;
     
     public SCHardwareSurvey() {
         MinecraftForge.EVENT_BUS.register(this);
@@ -40,28 +59,112 @@ public class SCHardwareSurvey {
     
     @Mod.EventHandler
     public void preInit(FMLPreInitializationEvent event) {
+        loadTimings.onPreInit();
+        startupReport.begin();
         LOG = event.getModLog();
         configDir = event.getModConfigurationDirectory();
+        startupReport.end();
+    }
+    
+    @Mod.EventHandler
+    public void init(FMLInitializationEvent event) {
+        loadTimings.onInit();
     }
     
     @Mod.EventHandler
     public void postInit(FMLPostInitializationEvent event) {
-        persistence = new StatsPersistence();
+        loadTimings.onPostInit();
+        startupReport.begin();
+        
+        persistence = new StatsPersistence(configDir);
         persistence.loadProperties();
         
-        if (persistence.isDone()) {
+        // send a response left over from an earlier launch, whether it failed or was never sent
+        StatsSubmitter.flushOutbox(persistence);
+        
+        StartupReport.Outcome outcome;
+        if (persistence.isResurveyDue() && persistence.getOutbox().isEmpty()) {
+            // already opted in, so there's no popup - the changes are queued as soon as collection finishes
+            LOG.info("Re-surveying, will submit anything that changed since the last survey");
+            outcome = StartupReport.Outcome.RESURVEY;
+            SurveyMetrics.INSTANCE.register();
+            
+            collector = new StatsCollector(persistence);
+            collector.collectStats();
+            
+            collector.getFuture().thenAccept(c -> StatsSubmitter.resubmitStats(persistence, c.getStats()));
+        } else if (persistence.isDone()) {
+            outcome = StartupReport.Outcome.DONE;
+            dontCollect = true;
+        } else if (!persistence.isSampled()) {
+            LOG.info("This install is outside the survey sample (rate {}), not asking", persistence.getSampleRate());
+            outcome = StartupReport.Outcome.NOT_SAMPLED;
             dontCollect = true;
+        } else {
+            outcome = StartupReport.Outcome.SURVEY;
+            popupDelay = POPUP_DELAY_MIN + ThreadLocalRandom.current().nextInt(POPUP_DELAY_SPREAD);
+            
+            SurveyMetrics.INSTANCE.register();
+            
+            collector = new StatsCollector(persistence);
+            collector.collectStats();
+            
+            collector.getFuture().thenAccept(c -> c.getStats().forEach((stat, value) -> LOG.info("Collected stat {} = {}", stat, value)));
+        }
+        
+        if (collector != null && persistence.isSessionTelemetry()) sessionTelemetry = new SessionTelemetry();
+        
+        startupReport.end();
+        startupReport.log(outcome);
+    }
+    
+    @Mod.EventHandler
+    public void loadComplete(FMLLoadCompleteEvent event) {
+        loadTimings.onLoadComplete();
+    }
+    
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        SessionTelemetry session = sessionTelemetry;
+        long now = System.nanoTime();
+        
+        if (event.phase == TickEvent.Phase.END) {
+            tickTimes.onTickEnd(now);
+            if (session != null) session.onTickEnd(now);
             return;
         }
         
-        collector = new StatsCollector();
-        collector.collectStats();
+        tickTimes.onTickStart(now);
+        if (session != null) session.onTickStart(now);
         
-        collector.getStats().forEach((stat, value) -> LOG.info("Collected stat {} = {}", stat, value));
+        // the GL collectors run on the first client tick rather than in postInit, keeping them out of mod loading
+        if (dontCollect || collector == null) return;
+        collector.collectRenderThreadStats();
+    }
+    
+    @SubscribeEvent
+    public void onRenderTick(TickEvent.RenderTickEvent event) {
+        long now = System.nanoTime();
+        
+        if (event.phase == TickEvent.Phase.START) {
+            frameTimes.onFrameStart(now);
+            
+            SessionTelemetry session = sessionTelemetry;
+            if (session != null) session.onFrameStart(now);
+        } else {
+            frameTimes.onFrameEnd(now);
+            loadTimings.onFrameEnd(now, Minecraft.getMinecraft());
+        }
     }
     
     @SubscribeEvent
     public void onWorldLoad(WorldEvent.Load event) {
+        if (collector != null && event.getWorld().isRemote) {
+            frameTimes.start();
+            tickTimes.start();
+            loadTimings.onWorldLoad(System.nanoTime());
+        }
+        
         if (persistence.isDone()) {
             dontCollect = true;
             return;
@@ -73,16 +176,47 @@ public class SCHardwareSurvey {
     
     @SubscribeEvent
     public void onPlayerTick(TickEvent.PlayerTickEvent event) {
-        if (dontCollect) return;
         if (!event.player.getEntityWorld().isRemote || event.phase != TickEvent.Phase.START) return;
+        loadTimings.onPlayerTick(System.nanoTime());
+        StatsSubmitter.sendPendingMessages();
         
+        if (dontCollect) return;
         if (ticking) timerTicks++;
         
-        if (!collected && timerTicks >= POPUP_DELAY) {
+        if (!collected && timerTicks >= popupDelay) {
             ticking = false;
             collected = true;
             
+            // the survey screen pauses the game, so this is a quiet moment for the benchmarks
+            collectWorldStats();
             Minecraft.getMinecraft().displayGuiScreen(new GuiSurvey(persistence, collector));
         }
     }
+    
+    // Submissions are only sent at idle moments - leaving a world, or opening the pause menu - so the upload never
+    // competes with gameplay
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.getWorld().isRemote) return;
+        
+        tickTimes.stop();
+        StatsSubmitter.flushOutbox(persistence);
+    }
+    
+    @SubscribeEvent
+    public void onGuiOpen(GuiOpenEvent event) {
+        if (!(event.getGui() instanceof GuiIngameMenu)) return;
+        
+        // re-surveys have no popup, so their world collectors run the first time the game is paused instead
+        if (collector != null && persistence.isDone()) collectWorldStats();
+        
+        // in session mode the response waits until the player leaves the world, so it carries the whole session
+        if (sessionTelemetry == null) StatsSubmitter.flushOutbox(persistence);
+    }
+    
+    private void collectWorldStats() {
+        // the frames from here on are spent on the survey screen and the benchmarks, not the game
+        frameTimes.stop();
+        collector.collectWorldStats();
+    }
 }
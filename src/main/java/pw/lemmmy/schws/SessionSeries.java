@@ -0,0 +1,116 @@
+package pw.lemmmy.schws;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+// A fixed-size store for a session's worth of samples, each a handful of channels. The most recent samples are kept at
+// full resolution, and as they age out they're averaged into coarser levels: with factors of 10 and 6, one sample a
+// second becomes one every 10 seconds and then one a minute. Each level is a ring of primitive floats allocated up
+// front, so the memory used is the same however long the session runs, and adding a sample allocates nothing. NaN
+// marks a missing value, and is left out of the averages.
+class SessionSeries {
+    private final int channels;
+    private final int[] capacities, factors;
+    
+    // [level][slot * channels + channel]
+    private final float[][] rings;
+    private final int[] heads, sizes;
+    
+    // running sums of the samples not yet averaged into the next level, and the averaged sample being handed down
+    private final double[][] sums;
+    private final int[][] counts;
+    private final int[] pending;
+    private final float[][] averages;
+    
+    // factors[i] samples of level i make up one sample of level i + 1
+    SessionSeries(int channels, int[] capacities, int[] factors) {
+        if (factors.length != capacities.length - 1) {
+            throw new IllegalArgumentException("Need exactly one factor between each pair of levels");
+        }
+        
+        this.channels = channels;
+        this.capacities = capacities.clone();
+        this.factors = factors.clone();
+        
+        int levels = capacities.length;
+        rings = new float[levels][];
+        for (int i = 0; i < levels; i++) rings[i] = new float[capacities[i] * channels];
+        heads = new int[levels];
+        sizes = new int[levels];
+        
+        sums = new double[levels][channels];
+        counts = new int[levels][channels];
+        pending = new int[levels];
+        averages = new float[levels][channels];
+    }
+    
+    synchronized void add(float[] sample) {
+        push(0, sample);
+    }
+    
+    private void push(int level, float[] sample) {
+        System.arraycopy(sample, 0, rings[level], heads[level] * channels, channels);
+        heads[level] = (heads[level] + 1) % capacities[level];
+        sizes[level] = Math.min(sizes[level] + 1, capacities[level]);
+        
+        if (level + 1 >= capacities.length) return;
+        
+        for (int c = 0; c < channels; c++) {
+            if (Float.isNaN(sample[c])) continue;
+            sums[level][c] += sample[c];
+            counts[level][c]++;
+        }
+        if (++pending[level] < factors[level]) return;
+        
+        float[] average = averages[level];
+        for (int c = 0; c < channels; c++) {
+            average[c] = counts[level][c] > 0 ? (float) (sums[level][c] / counts[level][c]) : Float.NaN;
+        }
+        Arrays.fill(sums[level], 0);
+        Arrays.fill(counts[level], 0);
+        pending[level] = 0;
+        
+        push(level + 1, average);
+    }
+    
+    synchronized int size(int level) {
+        return sizes[level];
+    }
+    
+    // A level's values for one channel, oldest first
+    synchronized float[] getValues(int level, int channel) {
+        int size = sizes[level], oldest = size < capacities[level] ? 0 : heads[level];
+        
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            int slot = (oldest + i) % capacities[level];
+            values[i] = rings[level][slot * channels + channel];
+        }
+        return values;
+    }
+    
+    // A level's values for one channel, oldest first, rounded to one byte each (0-254, with 255 for a missing value),
+    // deflated and base64 encoded. Each level's capacity should be kept small enough for the result to fit in a stat.
+    String encode(int level, int channel) {
+        float[] values = getValues(level, channel);
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) (Float.isNaN(values[i]) ? 255 : Math.max(0, Math.min(254, Math.round(values[i]))));
+        }
+        
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package pw.lemmmy.schws;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Opt-in: samples the game once a second for the whole session - heap use, process and system CPU load, and the mean
+// frame and tick times - so we can see how it holds up over a long session, which the survey's one-off snapshot can't
+// show. The samples go into a SessionSeries, keeping the last minute at one second, the last 10 minutes at 10 seconds
+// and the last 6 hours at one minute, and are attached to the next submission as compact session_series[...] stats.
+// Fed from the client thread; only toStats is called from elsewhere.
+class SessionTelemetry {
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private static final String[] CHANNELS = { "heap", "cpu_process", "cpu_system", "frame", "tick" };
+    private static final int HEAP = 0, CPU_PROCESS = 1, CPU_SYSTEM = 2, FRAME = 3, TICK = 4;
+    
+    private static final String[] LEVELS = { "1s", "10s", "1m" };
+    private static final int[] CAPACITIES = { 60, 60, 360 };
+    private static final int[] FACTORS = { 10, 6 };
+    
+    private final SessionSeries series = new SessionSeries(CHANNELS.length, CAPACITIES, FACTORS);
+    private final float[] sample = new float[CHANNELS.length];
+    private final OperatingSystemMXBean cpu = getCpuBean();
+    
+    private long nextSample = -1, frameStart = -1, tickStart = -1;
+    private long frameNanos = 0, frames = 0, tickNanos = 0, ticks = 0;
+    private volatile long samples = 0;
+    
+    void onFrameStart(long nanos) {
+        if (frameStart >= 0) {
+            frameNanos += nanos - frameStart;
+            frames++;
+        }
+        frameStart = nanos;
+    }
+    
+    void onTickStart(long nanos) {
+        tickStart = nanos;
+    }
+    
+    void onTickEnd(long nanos) {
+        if (tickStart >= 0) {
+            tickNanos += nanos - tickStart;
+            ticks++;
+            tickStart = -1;
+        }
+        
+        if (nextSample < 0) {
+            nextSample = nanos + INTERVAL_NANOS;
+        } else if (nanos >= nextSample) {
+            // stays on the same cadence while on time, but a long stall skips the seconds it missed and starts again an
+            // interval later, rather than catching up with back-to-back samples
+            nextSample += INTERVAL_NANOS;
+            if (nextSample <= nanos) nextSample = nanos + INTERVAL_NANOS;
+            sample();
+        }
+    }
+    
+    // Heap and CPU as percentages, frame and tick times as means in ms
+    private void sample() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        sample[HEAP] = (float) (heap.getUsed() * 100.0 / max);
+        
+        sample[CPU_PROCESS] = cpu != null ? toPercent(cpu.getProcessCpuLoad()) : Float.NaN;
+        sample[CPU_SYSTEM] = cpu != null ? toPercent(cpu.getSystemCpuLoad()) : Float.NaN;
+        
+        sample[FRAME] = frames > 0 ? frameNanos / 1e6f / frames : Float.NaN;
+        sample[TICK] = ticks > 0 ? tickNanos / 1e6f / ticks : Float.NaN;
+        frameNanos = frames = tickNanos = ticks = 0;
+        
+        series.add(sample);
+        samples++;
+    }
+    
+    // both loads are negative until the bean has a first reading to compare against
+    private static float toPercent(double load) {
+        return load < 0 ? Float.NaN : (float) (load * 100);
+    }
+    
+    // The CPU loads come from the HotSpot (and OpenJ9) extension of the bean, which other JVMs might not have
+    private static OperatingSystemMXBean getCpuBean() {
+        try {
+            Object os = ManagementFactory.getOperatingSystemMXBean();
+            return os instanceof OperatingSystemMXBean ? (OperatingSystemMXBean) os : null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+    
+    // Safe to call from any thread
+    Map<String, String> toStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        if (samples == 0) return stats;
+        
+        stats.put("session_length", Long.toString(samples));
+        for (int level = 0; level < LEVELS.length; level++) {
+            if (series.size(level) == 0) continue;
+            
+            for (int channel = 0; channel < CHANNELS.length; channel++) {
+                String key = String.format("session_series[%s_%s]", CHANNELS[channel], LEVELS[level]);
+                stats.put(key, series.encode(level, channel));
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,46 @@
+package pw.lemmmy.schws;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+// Measures the class loading and time spent in the mod's own load handlers, so we can confirm that the mod costs next
+// to nothing for players who have already answered the survey. Class counts are JVM-wide, but FML runs the handlers
+// on a single thread, so anything loaded in between is almost entirely down to us.
+class StartupReport {
+    // What postInit decided to do, which is most of what the startup cost depends on
+    enum Outcome {
+        DONE("survey already done"),
+        NOT_SAMPLED("outside the survey sample"),
+        RESURVEY("re-surveying in the background"),
+        SURVEY("collecting stats in the background");
+        
+        private final String description;
+        
+        Outcome(String description) {
+            this.description = description;
+        }
+    }
+    
+    private final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    
+    private long classes = 0, nanos = 0;
+    private long sectionClasses, sectionStart;
+    
+    void begin() {
+        sectionClasses = classLoading.getTotalLoadedClassCount();
+        sectionStart = System.nanoTime();
+    }
+    
+    void end() {
+        nanos += System.nanoTime() - sectionStart;
+        classes += classLoading.getTotalLoadedClassCount() - sectionClasses;
+    }
+    
+    void log(Outcome outcome) {
+        SCHardwareSurvey.LOG.info(
+            "Survey startup cost: {} classes loaded in {} ms ({})",
+            classes, TimeUnit.NANOSECONDS.toMillis(nanos), outcome.description
+        );
+    }
+}
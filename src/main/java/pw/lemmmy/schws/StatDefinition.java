@@ -0,0 +1,62 @@
+package pw.lemmmy.schws;
+
+// A stat the survey may send: its key, how its value is stored, and which collector produces it. Family definitions
+// cover a whole set of indexed keys, e.g. "jvm_arg[*]" for jvm_arg[0], jvm_arg[1] and so on.
+final class StatDefinition {
+    enum Type { STRING, LONG, BOOLEAN }
+    
+    final int index;
+    final String key;
+    final Type type;
+    final int maxLength;
+    final String collector;
+    final boolean isVolatile;
+    private final String prefix;
+    
+    StatDefinition(int index, String key, Type type, int maxLength, String collector, boolean isVolatile) {
+        this.index = index;
+        this.key = key;
+        this.type = type;
+        this.maxLength = maxLength;
+        this.collector = collector;
+        this.isVolatile = isVolatile;
+        this.prefix = key.endsWith("[*]") ? key.substring(0, key.length() - 2) : null;
+    }
+    
+    boolean isFamily() {
+        return prefix != null;
+    }
+    
+    // A family member needs something between the brackets, and nothing the backend's database would read as a nested
+    // path or an operator - the backend applies the same rule
+    boolean matches(String key) {
+        if (prefix == null) return this.key.equals(key);
+        if (key.length() <= prefix.length() + 1 || !key.startsWith(prefix) || !key.endsWith("]")) return false;
+        
+        for (int i = prefix.length(); i < key.length() - 1; i++) {
+            char c = key.charAt(i);
+            if (c == '.' || c == '$' || c == '[' || c == ']') return false;
+        }
+        return true;
+    }
+    
+    // Checks a value in its submitted string form, returning the problem or null if it is fine
+    String check(String value) {
+        if (value == null) return "missing value";
+        if (value.length() > maxLength) return "longer than " + maxLength + " characters";
+        
+        switch (type) {
+            case LONG:
+                try {
+                    Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return "not a number";
+                }
+                break;
+            case BOOLEAN:
+                if (!value.equals("true") && !value.equals("false")) return "not a boolean";
+                break;
+        }
+        return null;
+    }
+}
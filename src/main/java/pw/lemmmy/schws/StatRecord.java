@@ -0,0 +1,118 @@
+package pw.lemmmy.schws;
+
+import java.util.*;
+
+// Collected stats, stored against their StatRegistry definitions so numbers stay primitive and every key is checked
+// as it is recorded. Only turned into strings once, by toStringMap, when the survey is finished.
+final class StatRecord {
+    private final long[] numbers = new long[StatRegistry.size()];
+    private final String[] strings = new String[StatRegistry.size()];
+    private final BitSet present = new BitSet(StatRegistry.size());
+    
+    // family stats such as jvm_arg[i] are open-ended, so they are kept by their full key instead
+    private final Map<StatDefinition, Map<String, String>> families = new HashMap<>();
+    
+    private static StatDefinition require(String key, StatDefinition.Type type) {
+        StatDefinition definition = StatRegistry.get(key);
+        if (definition == null) throw new IllegalArgumentException("Unknown stat " + key);
+        if (definition.type != type) throw new IllegalArgumentException("Stat " + key + " is a " + definition.type);
+        return definition;
+    }
+    
+    void putString(String key, String value) {
+        if (value == null) return;
+        
+        StatDefinition definition = require(key, StatDefinition.Type.STRING);
+        if (value.length() > definition.maxLength) value = value.substring(0, definition.maxLength);
+        
+        if (definition.isFamily()) {
+            families.computeIfAbsent(definition, d -> new LinkedHashMap<>()).put(key, value);
+        } else {
+            strings[definition.index] = value;
+            present.set(definition.index);
+        }
+    }
+    
+    void putLong(String key, long value) {
+        StatDefinition definition = require(key, StatDefinition.Type.LONG);
+        
+        if (definition.isFamily()) {
+            families.computeIfAbsent(definition, d -> new LinkedHashMap<>()).put(key, Long.toString(value));
+        } else {
+            numbers[definition.index] = value;
+            present.set(definition.index);
+        }
+    }
+    
+    void putBoolean(String key, boolean value) {
+        StatDefinition definition = require(key, StatDefinition.Type.BOOLEAN);
+        numbers[definition.index] = value ? 1 : 0;
+        present.set(definition.index);
+    }
+    
+    // Records a stat from its string form, e.g. when read back from the hardware cache
+    void put(String key, String value) {
+        StatDefinition definition = StatRegistry.get(key);
+        if (definition == null) throw new IllegalArgumentException("Unknown stat " + key);
+        
+        String problem = definition.check(value);
+        if (problem != null && definition.type != StatDefinition.Type.STRING) {
+            throw new IllegalArgumentException("Invalid stat " + key + ": " + problem);
+        }
+        
+        switch (definition.type) {
+            case LONG:
+                putLong(key, Long.parseLong(value));
+                break;
+            case BOOLEAN:
+                putBoolean(key, Boolean.parseBoolean(value));
+                break;
+            default:
+                putString(key, value);
+        }
+    }
+    
+    void putAll(Map<String, String> stats) {
+        stats.forEach(this::put);
+    }
+    
+    void putAll(StatRecord other) {
+        for (int i = other.present.nextSetBit(0); i >= 0; i = other.present.nextSetBit(i + 1)) {
+            numbers[i] = other.numbers[i];
+            strings[i] = other.strings[i];
+            present.set(i);
+        }
+        other.families.forEach((definition, values) ->
+            families.computeIfAbsent(definition, d -> new LinkedHashMap<>()).putAll(values));
+    }
+    
+    // The stats in registry order, in the form they are submitted in
+    Map<String, String> toStringMap() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        
+        for (StatDefinition definition : StatRegistry.getDefinitions()) {
+            if (definition.isFamily()) {
+                Map<String, String> values = families.get(definition);
+                if (values != null) stats.putAll(values);
+                continue;
+            }
+            
+            int i = definition.index;
+            if (!present.get(i)) continue;
+            
+            switch (definition.type) {
+                case STRING:
+                    stats.put(definition.key, strings[i]);
+                    break;
+                case LONG:
+                    stats.put(definition.key, Long.toString(numbers[i]));
+                    break;
+                case BOOLEAN:
+                    stats.put(definition.key, Boolean.toString(numbers[i] != 0));
+                    break;
+            }
+        }
+        
+        return stats;
+    }
+}
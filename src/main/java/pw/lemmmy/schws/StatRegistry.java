@@ -0,0 +1,251 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static pw.lemmmy.schws.StatDefinition.Type.*;
+
+// Every stat the survey can send, in the order they are sent. This is the single source of truth for the keys: the
+// collectors can only record stats defined here, submissions are checked against it before they are sent, and the
+// backend's stats.json whitelist is generated from it by the generateStatsWhitelist task, which checkStatsWhitelist
+// (part of check) makes sure was run.
+final class StatRegistry {
+    // the backend truncates anything longer anyway
+    private static final int MAX_LENGTH = 512;
+    
+    private static final List<StatDefinition> DEFINITIONS = new ArrayList<>();
+    private static final Map<String, StatDefinition> KEYS = new HashMap<>();
+    private static final List<StatDefinition> FAMILIES = new ArrayList<>();
+    
+    static {
+        number("jvm_args", "jvm_args");
+        string("jvm_arg[*]", 256, "jvm_args");
+        
+        string("os_name", 64, "os");
+        string("os_version", 64, "os");
+        string("os_architecture", 32, "os");
+        string("java_version", 64, "os");
+        flag("java_64bit", "os");
+        
+        volatileNumber("memory_total", "memory");
+        number("memory_max", "memory");
+        
+        number("cpu_cores", "hardware");
+        string("cpu_model", 256, "hardware");
+        number("memory_system_total", "hardware");
+        
+        string("display_model", 256, "display");
+        
+        string("client_brand", 64, "minecraft");
+        string("launched_version", 128, "minecraft");
+        
+        string("forge_version", 64, "mods");
+        string("optifine_version", 64, "mods");
+        string("foamfix_version", 64, "mods");
+        
+        string("opengl_version", 256, "opengl");
+        string("opengl_vendor", 256, "opengl");
+        
+        number("gl_max_texture_size", "opengl_caps");
+        number(GLCapsRegistry.VERSION_STAT, "opengl_caps");
+        string(GLCapsRegistry.BITS_STAT, MAX_LENGTH, "opengl_caps");
+        number("gl_exts", "opengl_caps");
+        string("gl_ext[*]", 128, "opengl_caps");
+        number("gl_caps[gl_max_vertex_uniforms]", "opengl_caps");
+        number("gl_caps[gl_max_fragment_uniforms]", "opengl_caps");
+        number("gl_caps[gl_max_vertex_attribs]", "opengl_caps");
+        number("gl_caps[gl_max_vertex_texture_image_units]", "opengl_caps");
+        number("gl_caps[gl_max_texture_image_units]", "opengl_caps");
+        number("gl_caps[gl_max_array_texture_layers]", "opengl_caps");
+        number("gl_caps[gl_max_samples]", "opengl_caps");
+        number("gl_caps[gl_max_texture_buffer_size]", "opengl_caps");
+        number("gl_caps[gl_max_uniform_block_size]", "opengl_caps");
+        number("gl_caps[gl_max_shader_storage_block_size]", "opengl_caps");
+        number("opengl_memory", "opengl_caps");
+        volatileNumber("opengl_memory_available", "opengl_caps");
+        volatileNumber("opengl_memory_available_ati", "opengl_caps");
+        string("gl_limits_unsupported", MAX_LENGTH, "opengl_caps");
+        
+        volatileNumber("cpu_bench_int", "cpu_bench");
+        volatileNumber("cpu_bench_float", "cpu_bench");
+        volatileString("cpu_bench_scaling", 128, "cpu_bench");
+        
+        volatileNumber("memory_bench_write", "memory_bench");
+        volatileNumber("memory_bench_read", "memory_bench");
+        volatileNumber("memory_bench_latency_l2", "memory_bench");
+        volatileNumber("memory_bench_latency_llc", "memory_bench");
+        volatileNumber("memory_bench_latency_dram", "memory_bench");
+        
+        string("jvm_gc", 256, "jvm_runtime");
+        volatileNumber("jvm_uptime", "jvm_runtime");
+        add("jvm_gc_count[*]", LONG, 20, "jvm_runtime", true);
+        add("jvm_gc_time[*]", LONG, 20, "jvm_runtime", true);
+        string("jvm_jit", 128, "jvm_runtime");
+        volatileNumber("jvm_jit_time", "jvm_runtime");
+        add("jvm_pool_peak[*]", LONG, 20, "jvm_runtime", true);
+        add("jvm_pool_max[*]", LONG, 20, "jvm_runtime", true);
+        add("jvm_buffer_count[*]", LONG, 20, "jvm_runtime", true);
+        add("jvm_buffer_used[*]", LONG, 20, "jvm_runtime", true);
+        
+        volatileNumber("frame_count", "frame_times");
+        volatileNumber("frame_time_p50", "frame_times");
+        volatileNumber("frame_time_p95", "frame_times");
+        volatileNumber("frame_time_p99", "frame_times");
+        volatileNumber("frame_time_max", "frame_times");
+        volatileNumber("frame_stutters", "frame_times");
+        volatileNumber("frame_render_p95", "frame_times");
+        
+        volatileNumber("tick_count", "tick_times");
+        volatileNumber("tick_time_p50", "tick_times");
+        volatileNumber("tick_time_p95", "tick_times");
+        volatileNumber("tick_time_p99", "tick_times");
+        volatileNumber("tick_time_max", "tick_times");
+        volatileNumber("tick_overruns", "tick_times");
+        
+        volatileNumber("load_preinit", "load_times");
+        volatileNumber("load_init", "load_times");
+        volatileNumber("load_postinit", "load_times");
+        volatileNumber("load_complete", "load_times");
+        volatileNumber("join_first_tick", "load_times");
+        volatileNumber("join_first_frame", "load_times");
+        volatileNumber("join_chunks", "load_times");
+        
+        string("storage_fs_type", 64, "storage_bench");
+        volatileNumber("storage_bench_write", "storage_bench");
+        volatileNumber("storage_bench_fsync", "storage_bench");
+        volatileNumber("storage_bench_read", "storage_bench");
+        volatileNumber("storage_bench_random_read", "storage_bench");
+        volatileNumber("storage_bench_mmap_read", "storage_bench");
+        volatileNumber("storage_bench_mmap_random_read", "storage_bench");
+        
+        // every collector can be abandoned by CollectorRunner, leaving a <name>_timeout marker in its place
+        new LinkedHashSet<>(getCollectors()).forEach(c -> volatileNumber(c + "_timeout", "runner"));
+        
+        add("survey_timings[*]", LONG, 20, "survey", true);
+        
+        volatileNumber("session_length", "session");
+        add("session_series[*]", STRING, 512, "session", true);
+    }
+    
+    private StatRegistry() {}
+    
+    private static void add(String key, StatDefinition.Type type, int maxLength, String collector, boolean isVolatile) {
+        StatDefinition definition = new StatDefinition(DEFINITIONS.size(), key, type, maxLength, collector, isVolatile);
+        DEFINITIONS.add(definition);
+        if (definition.isFamily()) FAMILIES.add(definition);
+        else KEYS.put(key, definition);
+    }
+    
+    private static void string(String key, int maxLength, String collector) {
+        add(key, STRING, maxLength, collector, false);
+    }
+    
+    private static void number(String key, String collector) {
+        add(key, LONG, 20, collector, false);
+    }
+    
+    private static void volatileNumber(String key, String collector) {
+        add(key, LONG, 20, collector, true);
+    }
+    
+    private static void volatileString(String key, int maxLength, String collector) {
+        add(key, STRING, maxLength, collector, true);
+    }
+    
+    private static void flag(String key, String collector) {
+        add(key, BOOLEAN, 5, collector, false);
+    }
+    
+    private static List<String> getCollectors() {
+        List<String> collectors = new ArrayList<>();
+        for (StatDefinition definition : DEFINITIONS) collectors.add(definition.collector);
+        return collectors;
+    }
+    
+    static int size() {
+        return DEFINITIONS.size();
+    }
+    
+    static List<StatDefinition> getDefinitions() {
+        return Collections.unmodifiableList(DEFINITIONS);
+    }
+    
+    // Returns the definition covering this key, or null if the survey doesn't know it
+    static StatDefinition get(String key) {
+        StatDefinition definition = KEYS.get(key);
+        if (definition != null) return definition;
+        
+        for (StatDefinition family : FAMILIES) {
+            if (family.matches(key)) return family;
+        }
+        return null;
+    }
+    
+    static boolean isVolatile(String key) {
+        StatDefinition definition = get(key);
+        return definition != null && definition.isVolatile;
+    }
+    
+    // Checks stats about to be sent against the registry, so a bad key is caught here rather than rejected by the
+    // server after a round trip
+    static void validate(Map<String, String> stats) {
+        for (Map.Entry<String, String> stat : stats.entrySet()) {
+            StatDefinition definition = get(stat.getKey());
+            if (definition == null) throw new IllegalArgumentException("Unknown stat " + stat.getKey());
+            
+            String problem = definition.check(stat.getValue());
+            if (problem != null) throw new IllegalArgumentException("Invalid stat " + stat.getKey() + ": " + problem);
+        }
+    }
+    
+    // Writes the backend's whitelist: every key the client can send, with families written as e.g. "jvm_arg[*]"
+    private static JsonArray getWhitelist() {
+        JsonArray keys = new JsonArray();
+        DEFINITIONS.forEach(d -> keys.add(d.key));
+        
+        // older clients sent the original capabilities as individual flags rather than gl_caps_bits
+        for (int i = 0; i < GLCapsRegistry.getLength(1); i++) {
+            keys.add(String.format("gl_caps[%s]", GLCapsRegistry.getName(i)));
+        }
+        return keys;
+    }
+    
+    private static JsonObject getGLCaps() {
+        JsonObject versions = new JsonObject();
+        for (int version = 1; version <= GLCapsRegistry.VERSION; version++) {
+            versions.addProperty(Integer.toString(version), GLCapsRegistry.getLength(version));
+        }
+        
+        JsonArray caps = new JsonArray();
+        for (int i = 0; i < GLCapsRegistry.size(); i++) caps.add(GLCapsRegistry.getName(i));
+        
+        JsonObject root = new JsonObject();
+        root.add("versions", versions);
+        root.add("caps", caps);
+        return root;
+    }
+    
+    // Generates backend/stats.json and backend/gl_caps.json, run by the generateStatsWhitelist task
+    public static void main(String[] args) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        
+        try (Writer writer = Files.newBufferedWriter(Paths.get(args[0], "stats.json"), StandardCharsets.UTF_8)) {
+            gson.toJson(getWhitelist(), writer);
+            writer.write('\n');
+        }
+        
+        try (Writer writer = Files.newBufferedWriter(Paths.get(args[0], "gl_caps.json"), StandardCharsets.UTF_8)) {
+            gson.toJson(getGLCaps(), writer);
+            writer.write('\n');
+        }
+    }
+}
@@ -6,18 +6,42 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class StatsPersistence {
     private Properties config = new Properties();
     private File configFile = null;
+    private HardwareCache hardwareCache = null;
+    private SubmissionOutbox outbox = null;
+    private SurveySnapshot snapshot = null;
+    
+    private final File configDir;
+    
+    public StatsPersistence(File configDir) {
+        this.configDir = configDir;
+    }
     
-    // Must be done at runtime
     private File getConfigFile() {
         if (configFile != null) return configFile;
-        File configDir = SCHardwareSurvey.INSTANCE.configDir;
         return configFile = new File(configDir, "schardwaresurvey.properties");
     }
     
+    public synchronized HardwareCache getHardwareCache() {
+        if (hardwareCache != null) return hardwareCache;
+        return hardwareCache = new HardwareCache(new File(configDir, "schardwaresurvey-hardware.properties"));
+    }
+    
+    public synchronized SubmissionOutbox getOutbox() {
+        if (outbox != null) return outbox;
+        return outbox = new SubmissionOutbox(new File(configDir, "schardwaresurvey-outbox.json"));
+    }
+    
+    public synchronized SurveySnapshot getSnapshot() {
+        if (snapshot != null) return snapshot;
+        return snapshot = new SurveySnapshot(new File(configDir, "schardwaresurvey-snapshot.json.gz"));
+    }
+    
     public void loadProperties() {
         final File configFile = getConfigFile();
         SCHardwareSurvey.LOG.info("Using properties file: {}", configFile.getAbsolutePath());
@@ -32,9 +56,16 @@ public class StatsPersistence {
             config.setProperty("done", "false");
             saveProperties();
         }
+        
+        // one-shot flag to force the hardware to be probed again on this launch
+        if (Boolean.parseBoolean(config.getProperty("invalidate_hardware_cache", "false"))) {
+            getHardwareCache().invalidate();
+            config.remove("invalidate_hardware_cache");
+            saveProperties();
+        }
     }
     
-    private void saveProperties() {
+    private synchronized void saveProperties() {
         try (BufferedWriter bw = Files.newBufferedWriter(configFile.toPath())) {
             config.store(bw, "Persistence information for the SwitchCraft Hardware Survey");
         } catch (IOException e) {
@@ -42,17 +73,91 @@ public class StatsPersistence {
         }
     }
     
-    public void submitted(String token) {
+    public synchronized void submitted(String token) {
         config.setProperty("done", "true");
         config.setProperty("token", token);
+        config.setProperty("last_survey", Long.toString(System.currentTimeMillis()));
+        saveProperties();
+    }
+    
+    // Starts the next re-survey interval, for when a re-survey found nothing new to send
+    public synchronized void resurveyed() {
+        config.setProperty("last_survey", Long.toString(System.currentTimeMillis()));
         saveProperties();
     }
     
-    public void dontShow() {
+    public synchronized void dontShow() {
         config.setProperty("done", "true");
         saveProperties();
     }
     
+    // Opt-in: also submits how long each collector took, as survey_timings[...] stats
+    public boolean isIncludeTimings() {
+        return Boolean.parseBoolean(config.getProperty("include_timings", "false"));
+    }
+    
+    // Random per-install id, only used locally to decide whether this install falls within the sample
+    public synchronized String getInstallId() {
+        String id = config.getProperty("install_id");
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            config.setProperty("install_id", id);
+            saveProperties();
+        }
+        return id;
+    }
+    
+    // Fraction of installs that are asked to take the survey, between 0 and 1. Modpacks can ship a lower rate to
+    // spread a release's responses out.
+    public double getSampleRate() {
+        try {
+            double rate = Double.parseDouble(config.getProperty("sample_rate", "1"));
+            return Double.isNaN(rate) ? 1 : Math.max(0, Math.min(1, rate));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+    
+    // The same install always lands in the same bucket, so raising the rate only ever adds installs to the sample
+    public boolean isSampled() {
+        int bucket = Math.floorMod(getInstallId().hashCode(), 10000);
+        return bucket < getSampleRate() * 10000;
+    }
+    
+    // Opt-in: periodically collect the stats again, and send whatever changed since the last submission
+    public synchronized boolean isResurveyDue() {
+        if (!isDone() || getToken() == null) return false;
+        if (!Boolean.parseBoolean(config.getProperty("resurvey", "false"))) return false;
+        
+        try {
+            long interval = TimeUnit.DAYS.toMillis(Long.parseLong(config.getProperty("resurvey_interval_days", "90")));
+            long last = Long.parseLong(config.getProperty("last_survey", "0"));
+            return System.currentTimeMillis() - last >= interval;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    public String getToken() {
+        return config.getProperty("token");
+    }
+    
+    // Opt-out: the CPU, memory and storage benchmarks that run while the survey screen is open
+    public boolean isRunBenchmarks() {
+        return Boolean.parseBoolean(config.getProperty("benchmarks", "true"));
+    }
+    
+    // Overrides the survey server's submission URL, e.g. http://localhost:8080/submit for the stub server in src/tools.
+    // Null if not set.
+    public String getEndpoint() {
+        return config.getProperty("endpoint");
+    }
+    
+    // Opt-in: samples the game for the whole session and sends the series along with the survey
+    public boolean isSessionTelemetry() {
+        return Boolean.parseBoolean(config.getProperty("session_telemetry", "false"));
+    }
+    
     public boolean isDone() {
         return Boolean.parseBoolean(config.getProperty("done", "false"));
     }
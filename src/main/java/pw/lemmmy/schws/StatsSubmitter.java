@@ -1,14 +1,18 @@
 package pw.lemmmy.schws;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
+import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.Style;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextFormatting;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
@@ -16,23 +20,129 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 public class StatsSubmitter {
     private static final String SUBMIT_URL = "https://hardware.switchcraft.pw/submit";
-    private static final Gson GSON = new GsonBuilder().create();
     
-    private static String submitInternal(StatsPersistence persistence, Map<String, String> stats) throws MalformedURLException {
-        UUID token = UUID.randomUUID();
-        URL url = new URL(SUBMIT_URL + "/" + token.toString());
+    // Set once the server (or something in front of it) has refused a compressed, chunked upload, so the rest of the
+    // session goes straight to a plain fixed-length one
+    private static volatile boolean plainUploads = false;
+    
+    // Failures worth trying again later: the network, or the server having a bad moment. Anything else means the
+    // server looked at the data and refused it, so sending it again won't help.
+    private static final Set<String> RETRYABLE_ERRORS = new HashSet<>(Arrays.asList(
+        "connect_failed", "write_failed", "read_failed", "no_response", "invalid_response", "unknown_error"
+    ));
+    
+    private static final AtomicBoolean retrying = new AtomicBoolean(false);
+    
+    // Results that arrived with nobody in a world to see them - submissions go out as the player leaves one, and
+    // leftovers from an earlier launch before they join one - waiting for the player to be back. Client thread only.
+    private static final Deque<ITextComponent> pendingMessages = new ArrayDeque<>();
+    
+    private static final int CONNECT_TIMEOUT_MS = 10000, READ_TIMEOUT_MS = 20000;
+    
+    // Submissions do blocking I/O, so they get their own small daemon thread rather than the common ForkJoin pool that
+    // other mods use for parallel work. The thread goes away when idle, and there's never more than a few queued.
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+        1, 1, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(4),
+        new ThreadFactoryBuilder().setNameFormat("SCHWS Submitter").setDaemon(true).build()
+    );
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    
+    // Records the error type in the metrics before it is thrown
+    private static SubmissionException fail(String type, String message) {
+        return fail(type, message, null);
+    }
+    
+    private static SubmissionException fail(String type, String message, Throwable cause) {
+        SurveyMetrics.INSTANCE.recordError(type);
+        return new SubmissionException(type, RETRYABLE_ERRORS.contains(type), message, cause);
+    }
+    
+    // The production server unless overridden, for testing against a local stub: the schws.endpoint system property
+    // comes first, then endpoint in the properties file
+    private static String getEndpoint(StatsPersistence persistence) {
+        String endpoint = System.getProperty("schws.endpoint", persistence.getEndpoint());
+        return StringUtils.isBlank(endpoint) ? SUBMIT_URL : StringUtils.removeEnd(endpoint.trim(), "/");
+    }
+    
+    static String submitInternal(String endpoint, String token, Map<String, String> stats, String previous,
+                                 List<String> removed) {
+        // anything the server would refuse is caught here, without a round trip
+        try {
+            StatRegistry.validate(stats);
+            if (removed != null) removed.forEach(key -> {
+                if (StatRegistry.get(key) == null) throw new IllegalArgumentException("Unknown stat " + key);
+            });
+        } catch (IllegalArgumentException e) {
+            throw fail("invalid_stat", e.getMessage(), e);
+        }
+        
+        URL url;
+        try {
+            url = new URL(endpoint + "/" + token);
+        } catch (MalformedURLException e) {
+            throw fail("invalid_url", "Invalid submission URL", e);
+        }
+        
+        StatsResponse response = null;
+        if (!plainUploads) {
+            response = post(url, stats, previous, removed, true);
+            if (response == null) {
+                SCHardwareSurvey.LOG.warn("Server refused a compressed upload, retrying uncompressed");
+                plainUploads = true;
+            }
+        }
+        if (response == null) response = post(url, stats, previous, removed, false);
+        if (response == null) throw fail("unsupported_upload", "Server refused the upload");
         
+        if (!response.ok) {
+            if (StringUtils.isEmpty(response.error))
+                throw fail("unknown_error", "Received unknown error from the server");
+            
+            switch (response.error) {
+                case "invalid_token":
+                    throw fail(response.error, "Invalid token");
+                case "missing_stats":
+                    throw fail(response.error, "Missing stats (failed to serialise?)");
+                case "invalid_client":
+                    throw fail(response.error, "Invalid client (modified mod?)");
+                case "invalid_stat":
+                    throw fail(response.error, "Server did not recognise the stat:");
+                case "already_submitted":
+                    throw fail(response.error, "Data was already submitted to the server");
+                case "invalid_previous":
+                case "unknown_previous":
+                    throw fail(response.error, "Server does not know the previous submission");
+                case "invalid_replace":
+                    throw fail(response.error, "Server refused to replace the previous submission");
+                default:
+                    throw fail(response.error, "Unknown error: " + response.error);
+            }
+        }
+        
+        return response.upliftHeadThought;
+    }
+    
+    // Streams the stats straight into the connection, either gzipped and chunked, or plain with a fixed length.
+    // Returns null if the server refused the upload format.
+    private static StatsResponse post(URL url, Map<String, String> stats, String previous, List<String> removed,
+                                      boolean compressed) {
         String mcVersion = "1.12.2";
         String modVersion = SCHardwareSurvey.VERSION;
         
-        SerialisedStats serialisedStats = new SerialisedStats(stats);
-        String requestBody = GSON.toJson(serialisedStats);
+        long start = System.nanoTime();
         
         try {
             HttpURLConnection con = (HttpURLConnection) url.openConnection();
@@ -41,88 +151,344 @@ public class StatsSubmitter {
             con.setRequestProperty("Content-Type", "application/json");
             con.setRequestProperty("Accept", "application/json");
             con.setUseCaches(false);
+            con.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            con.setReadTimeout(READ_TIMEOUT_MS);
             con.setDoInput(true);
             con.setDoOutput(true);
             
-            try (OutputStream os = con.getOutputStream()) {
-                IOUtils.write(requestBody, os, StandardCharsets.UTF_8);
+            byte[] plainBody = null;
+            long serialisationNanos = 0;
+            if (compressed) {
+                con.setRequestProperty("Content-Encoding", "gzip");
+                con.setChunkedStreamingMode(0);
+            } else {
+                // only used when chunked uploads were refused, so the body has to be measured up front
+                long serialisationStart = System.nanoTime();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                writeBody(bos, stats, previous, removed);
+                plainBody = bos.toByteArray();
+                serialisationNanos = System.nanoTime() - serialisationStart;
+                con.setFixedLengthStreamingMode(plainBody.length);
+            }
+            
+            long connectStart = System.nanoTime();
+            try {
+                con.connect();
             } catch (IOException e) {
-                throw new RuntimeException("Could not write data to the server", e);
+                throw fail("connect_failed", "Could not contact server", e);
             }
-    
-            StatsResponse response;
-            try (
-                InputStream is = con.getErrorStream() != null ? con.getErrorStream() : con.getInputStream();
-                BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
-            ) {
-                response = GSON.fromJson(br, StatsResponse.class);
-            } catch (IOException | JsonIOException e) {
-                throw new RuntimeException("Could not read data from the server", e);
-            } catch (JsonSyntaxException e) {
-                throw new RuntimeException("Received invalid response from the server", e);
+            long connectNanos = System.nanoTime() - connectStart;
+            
+            long writeStart = System.nanoTime();
+            long requestBytes;
+            try (CountingOutputStream os = new CountingOutputStream(con.getOutputStream())) {
+                if (compressed) {
+                    // closing the gzip stream writes its trailer and closes the connection's stream
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(os)) {
+                        // the JSON is compressed and uploaded as it's written, so the time spent inside the gzip
+                        // stream is taken back out to leave the serialisation on its own
+                        TimedOutputStream timed = new TimedOutputStream(gzip);
+                        long serialisationStart = System.nanoTime();
+                        writeBody(timed, stats, previous, removed);
+                        serialisationNanos = System.nanoTime() - serialisationStart - timed.nanos;
+                    }
+                } else {
+                    os.write(plainBody);
+                }
+                requestBytes = os.getCount();
+            } catch (IOException e) {
+                throw fail("write_failed", "Could not write data to the server", e);
             }
+            long uploadNanos = System.nanoTime() - writeStart - (compressed ? serialisationNanos : 0);
             
-            if (response == null) throw new RuntimeException("Did not receive response from server");
-            if (!response.ok) {
-                if (StringUtils.isEmpty(response.error))
-                    throw new RuntimeException("Received unknown error from the server");
+            long requestSent = System.nanoTime();
+            StatsResponse response;
+            long timeToFirstByteNanos;
+            CountingInputStream counter;
+            try {
+                // blocks until the response headers have arrived
+                int status = con.getResponseCode();
+                timeToFirstByteNanos = System.nanoTime() - requestSent;
                 
-                switch (response.error) {
-                    case "invalid_token":
-                        throw new RuntimeException("Invalid token");
-                    case "missing_stats":
-                        throw new RuntimeException("Missing stats (failed to serialise?)");
-                    case "invalid_client":
-                        throw new RuntimeException("Invalid client (modified mod?)");
-                    case "invalid_stat":
-                        throw new RuntimeException("Server did not recognise the stat:");
-                    case "already_submitted":
-                        throw new RuntimeException("Data was already submitted to the server");
-                    default:
-                        throw new RuntimeException("Unknown error: " + response.error);
+                if (status == HttpURLConnection.HTTP_UNSUPPORTED_TYPE || status == HttpURLConnection.HTTP_LENGTH_REQUIRED) {
+                    con.disconnect();
+                    return null;
                 }
+                
+                InputStream stream = con.getErrorStream() != null ? con.getErrorStream() : con.getInputStream();
+                try (
+                    InputStream is = counter = new CountingInputStream(stream);
+                    JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))
+                ) {
+                    response = readResponse(reader);
+                }
+            } catch (EOFException e) {
+                throw fail("no_response", "Did not receive response from server", e);
+            } catch (IllegalStateException | MalformedJsonException e) {
+                throw fail("invalid_response", "Received invalid response from the server", e);
+            } catch (IOException e) {
+                throw fail("read_failed", "Could not read data from the server", e);
             }
-    
-            persistence.submitted(token.toString());
-            return response.upliftHeadThought;
+            
+            SurveyMetrics.INSTANCE.recordSubmission(
+                serialisationNanos, connectNanos, uploadNanos, timeToFirstByteNanos, System.nanoTime() - start,
+                requestBytes, counter.getCount()
+            );
+            
+            return response;
         } catch (IOException e) {
-            throw new RuntimeException("Could not contact server", e);
+            throw fail("connect_failed", "Could not contact server", e);
         }
     }
     
+    // Adds up the time spent in writes to the wrapped stream
+    private static class TimedOutputStream extends FilterOutputStream {
+        long nanos;
+        
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+    }
+    
+    // A re-survey with no removed list asks the server to replace the previous submission's stats outright
+    static void writeBody(OutputStream os, Map<String, String> stats, String previous, List<String> removed)
+        throws IOException {
+        // not closed here, the caller owns the stream
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)));
+        writer.beginObject();
+        writer.name("stats").beginObject();
+        for (Map.Entry<String, String> stat : stats.entrySet()) {
+            writer.name(stat.getKey()).value(stat.getValue());
+        }
+        writer.endObject();
+        
+        if (previous != null) {
+            writer.name("previous").value(previous);
+            if (removed == null) {
+                writer.name("replace").value(true);
+            } else {
+                writer.name("removed").beginArray();
+                for (String key : removed) writer.value(key);
+                writer.endArray();
+            }
+        }
+        
+        writer.endObject();
+        writer.flush();
+    }
+    
+    // Reads the response field by field, without buffering it into a String first
+    private static StatsResponse readResponse(JsonReader reader) throws IOException {
+        StatsResponse response = new StatsResponse();
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            
+            switch (name) {
+                case "ok":
+                    response.ok = reader.nextBoolean();
+                    break;
+                case "error":
+                    response.error = reader.nextString();
+                    break;
+                case "upliftHeadThought":
+                    response.upliftHeadThought = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        return response;
+    }
+    
     public static void submitStats(StatsPersistence persistence, Map<String, String> stats) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                String headThought = submitInternal(persistence, stats);
-                Minecraft.getMinecraft().player.sendMessage(new TextComponentString("")
-                    .appendSibling(
-                        new TextComponentString("Thanks for your participation! Here is uplift head thought:")
-                            .setStyle(new Style().setColor(TextFormatting.DARK_GREEN))
-                    )
-                    .appendSibling(new TextComponentString("\n"))
-                    .appendSibling(
-                        new TextComponentString(headThought)
-                            .setStyle(new Style().setColor(TextFormatting.GREEN))
-                    )
-                );
-            } catch (Exception e) {
-                persistence.dontShow();
+        // the player has answered either way, so never ask them again
+        persistence.dontShow();
+        
+        // written to the outbox first, so the response survives even if the game closes before it is sent
+        SubmissionOutbox.Entry entry = new SubmissionOutbox.Entry(UUID.randomUUID().toString(), stats);
+        persistence.getOutbox().store(entry);
+        
+        // not sent straight away - SCHardwareSurvey flushes the outbox at the next idle moment, off the gameplay path
+        SCHardwareSurvey.LOG.info("Survey response queued for submission");
+    }
+    
+    // Queues a re-survey, sending only what changed since the last accepted submission. If nothing changed, nothing
+    // is sent, and the next re-survey is scheduled as normal.
+    public static void resubmitStats(StatsPersistence persistence, Map<String, String> stats) {
+        SurveySnapshot.Snapshot last = persistence.getSnapshot().load();
+        persistence.resurveyed();
+        
+        // a collector that timed out this time keeps its last accepted values rather than counting as a change
+        if (last != null) stats = SurveySnapshot.carryOver(last.stats, stats);
+        if (last != null && last.hash.equals(SurveySnapshot.hash(stats))) {
+            SCHardwareSurvey.LOG.info("Nothing changed since the last survey, not submitting");
+            return;
+        }
+        
+        SubmissionOutbox.Entry entry = new SubmissionOutbox.Entry(UUID.randomUUID().toString(), stats);
+        entry.previous = last != null ? last.token : persistence.getToken();
+        persistence.getOutbox().store(entry);
+        SCHardwareSurvey.LOG.info("Survey changes queued for submission");
+    }
+    
+    // Sends the submission waiting in the outbox, if it is due. The first attempt reports failures in chat, later
+    // retries stay quiet.
+    public static void flushOutbox(StatsPersistence persistence) {
+        SubmissionOutbox outbox = persistence.getOutbox();
+        if (outbox.isEmpty() || !retrying.compareAndSet(false, true)) return;
+        
+        runExclusive(() -> {
+            SubmissionOutbox.Entry entry = outbox.load();
+            if (entry == null || entry.isExpired()) {
+                SCHardwareSurvey.LOG.warn("Dropping survey submission from the outbox");
+                outbox.clear();
+            } else if (entry.isDue()) {
+                attempt(persistence, entry, entry.attempts == 0);
+            }
+        });
+    }
+    
+    // Runs the task on the submitter thread, clearing the retrying flag (set by the caller) once it is done
+    private static void runExclusive(Runnable task) {
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    retrying.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            retrying.set(false);
+            SCHardwareSurvey.LOG.warn("Could not queue survey submission", e);
+        }
+    }
+    
+    private static void attempt(StatsPersistence persistence, SubmissionOutbox.Entry entry, boolean interactive) {
+        SubmissionOutbox outbox = persistence.getOutbox();
+        
+        try {
+            String headThought = send(persistence, entry);
+            accepted(persistence, entry);
+            
+            sendMessage(new TextComponentString("")
+                .appendSibling(
+                    new TextComponentString("Thanks for your participation! Here is uplift head thought:")
+                        .setStyle(new Style().setColor(TextFormatting.DARK_GREEN))
+                )
+                .appendSibling(new TextComponentString("\n"))
+                .appendSibling(
+                    new TextComponentString(headThought)
+                        .setStyle(new Style().setColor(TextFormatting.GREEN))
+                )
+            );
+        } catch (SubmissionException e) {
+            if ("already_submitted".equals(e.getError())) {
+                // an earlier attempt got through, but we never saw the response
+                SCHardwareSurvey.LOG.info("Survey was already submitted with token {}", entry.token);
+                accepted(persistence, entry);
+            } else if (entry.previous != null && e.getError().endsWith("_previous")) {
+                // the server lost track of the earlier submission, so send these stats on their own next time
+                SCHardwareSurvey.LOG.warn("Server does not know submission {}, will send a full survey", entry.previous);
+                entry.previous = null;
+                persistence.getSnapshot().clear();
+                outbox.store(entry);
+            } else if (e.isRetryable() && !entry.isExpired()) {
+                SCHardwareSurvey.LOG.warn("Error submitting survey, will retry later: ", e);
+                outbox.failed(entry);
                 
+                if (interactive) sendMessage(
+                    new TextComponentString("Could not reach the survey server, your response will be sent later.")
+                        .setStyle(new Style().setColor(TextFormatting.GRAY))
+                );
+            } else {
                 SCHardwareSurvey.LOG.error("Error submitting survey: ", e);
-                Minecraft.getMinecraft().player.sendMessage(
+                outbox.clear();
+                
+                if (interactive) sendMessage(
                     new TextComponentString("Error submitting survey: " + e.getMessage())
                         .setStyle(new Style().setColor(TextFormatting.RED))
                 );
             }
-        });
+        }
     }
     
-    private static class SerialisedStats {
-        private final Map<String, String> stats;
+    // Re-surveys send only the changed keys when the snapshot of the previous submission is still around. Otherwise
+    // there's no telling what was removed since, so every stat is sent with no removed list, and the server replaces
+    // the previous values wholesale rather than merging them in.
+    private static String send(StatsPersistence persistence, SubmissionOutbox.Entry entry) {
+        String endpoint = getEndpoint(persistence);
+        if (entry.previous == null) return submitInternal(endpoint, entry.token, withSession(entry.stats), null, null);
         
-        private SerialisedStats(Map<String, String> stats) {
-            this.stats = stats;
+        SurveySnapshot.Snapshot last = persistence.getSnapshot().load();
+        if (last == null || !last.token.equals(entry.previous)) {
+            return submitInternal(endpoint, entry.token, withSession(entry.stats), entry.previous, null);
         }
+        
+        SurveySnapshot.Delta delta = SurveySnapshot.diff(last.stats, entry.stats);
+        return submitInternal(endpoint, entry.token, withSession(delta.changed), entry.previous, delta.removed);
+    }
+    
+    // The session series is taken as each attempt is sent rather than stored in the outbox, so it covers as much of the
+    // session as possible. It's never part of the snapshot, so it doesn't count as a change on the next re-survey.
+    private static Map<String, String> withSession(Map<String, String> stats) {
+        SessionTelemetry session = SCHardwareSurvey.INSTANCE.sessionTelemetry;
+        if (session == null) return stats;
+        
+        Map<String, String> merged = new LinkedHashMap<>(stats);
+        merged.putAll(session.toStats());
+        return merged;
+    }
+    
+    private static void accepted(StatsPersistence persistence, SubmissionOutbox.Entry entry) {
+        persistence.submitted(entry.token);
+        persistence.getSnapshot().store(entry.token, entry.stats);
+        persistence.getOutbox().clear();
+    }
+    
+    // Hands the message over to the client thread, rather than touching the player from the submitter thread
+    private static void sendMessage(ITextComponent message) {
+        Minecraft.getMinecraft().addScheduledTask(() -> {
+            EntityPlayerSP player = Minecraft.getMinecraft().player;
+            if (player != null) player.sendMessage(message);
+            else pendingMessages.add(message);
+        });
+    }
+    
+    // Shows any results held back while there was no player, called on the client thread once one is in a world
+    static void sendPendingMessages() {
+        EntityPlayerSP player = Minecraft.getMinecraft().player;
+        if (player == null) return;
+        while (!pendingMessages.isEmpty()) player.sendMessage(pendingMessages.remove());
     }
     
     private static class StatsResponse {
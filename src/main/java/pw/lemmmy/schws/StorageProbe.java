@@ -0,0 +1,193 @@
+package pw.lemmmy.schws;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Measures the storage the game runs from, using a small temporary file in the config directory: sequential write
+// throughput (including the flush to disk), fsync latency, then sequential and random 4K reads through both a
+// FileChannel and a memory mapping. The file was only just written, so the reads mostly show how fast the OS serves
+// them from its cache - the write and fsync figures are the ones that tell an HDD, SSD and network share apart, along
+// with the file system type. The mapping is released before returning, and the file is opened to be deleted on close,
+// so the OS removes it even if the game exits while an abandoned probe is still writing: Unix unlinks it straight
+// away, and Windows deletes it once its last handle is closed. Any left behind by earlier versions are swept up first.
+class StorageProbe {
+    // small enough to write within the budget on a slow disk, large enough to get past the drive's own cache
+    private static final int FILE_SIZE = 8 << 20;
+    private static final int CHUNK = 1 << 20;
+    private static final int BLOCK = 4096;
+    
+    private static final int MAX_FSYNCS = 16;
+    
+    // random reads between deadline checks
+    private static final int RANDOM_CHUNK = 64;
+    
+    private static volatile long sink;
+    
+    private final File directory;
+    private final long budgetNanos;
+    
+    StorageProbe(File directory, long budgetMillis) {
+        this.directory = directory;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+    
+    void collect(StatRecord stats) throws IOException {
+        long deadline = System.nanoTime() + budgetNanos;
+        int remaining = 6;
+        
+        // the directory's, as the file itself is gone as soon as it's opened on Unix
+        stats.putString("storage_fs_type", Files.getFileStore(directory.toPath()).type());
+        
+        deleteStaleFiles();
+        Path file = Files.createTempFile(directory.toPath(), "schws-io", ".tmp");
+        ByteBuffer chunk = null;
+        MappedByteBuffer mapped = null;
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.DELETE_ON_CLOSE)) {
+            chunk = ByteBuffer.allocateDirect(CHUNK);
+            SplittableRandom random = new SplittableRandom();
+            while (chunk.hasRemaining()) chunk.putLong(random.nextLong());
+            
+            // in MB/s, in µs per fsync and in ns per random 4K read
+            long size = measureWrite(channel, chunk, stats, getSlice(deadline, remaining--));
+            stats.putLong("storage_bench_fsync", measureFsync(channel, chunk, size, random, getSlice(deadline, remaining--)));
+            
+            stats.putLong("storage_bench_read", measureRead(channel, chunk, size, getSlice(deadline, remaining--)));
+            long randomRead = measureRandomRead(channel, chunk, size, random, getSlice(deadline, remaining--));
+            stats.putLong("storage_bench_random_read", randomRead);
+            
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            stats.putLong("storage_bench_mmap_read", measureMappedRead(mapped, getSlice(deadline, remaining--)));
+            long mappedRandomRead = measureMappedRandomRead(mapped, random, getSlice(deadline, remaining));
+            stats.putLong("storage_bench_mmap_random_read", mappedRandomRead);
+        } finally {
+            // the mapping has to go before the file can be deleted on Windows, and the file is deleted here too in
+            // case opening the channel failed
+            DirectBuffers.free(mapped);
+            DirectBuffers.free(chunk);
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    private void deleteStaleFiles() throws IOException {
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory.toPath(), "schws-io*.tmp")) {
+            for (Path path : stale) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // still open in another instance of the game sharing the directory
+                }
+            }
+        }
+    }
+    
+    private static long getSlice(long deadline, int remaining) {
+        return Math.max(0, (deadline - System.nanoTime()) / remaining);
+    }
+    
+    private static long toMegabytesPerSecond(long bytes, long nanos) {
+        return (long) (bytes / (Math.max(1, nanos) / 1e9) / (1 << 20));
+    }
+    
+    // Writes up to FILE_SIZE sequentially and flushes it to the device, returning how much was written. A slow disk
+    // stops early at the deadline rather than overrunning the budget.
+    private static long measureWrite(FileChannel channel, ByteBuffer chunk, StatRecord stats, long nanos)
+        throws IOException {
+        long start = System.nanoTime(), deadline = start + nanos, size = 0;
+        
+        do {
+            chunk.clear();
+            while (chunk.hasRemaining()) size += channel.write(chunk, size);
+        } while (size < FILE_SIZE && System.nanoTime() < deadline);
+        channel.force(false);
+        
+        stats.putLong("storage_bench_write", toMegabytesPerSecond(size, System.nanoTime() - start));
+        return size;
+    }
+    
+    // Average time to rewrite a random block and flush it to the device, in µs
+    private static long measureFsync(FileChannel channel, ByteBuffer chunk, long size, SplittableRandom random,
+                                     long nanos) throws IOException {
+        // a slice of the direct chunk, as writing a heap buffer would make the JDK cache a direct copy of it
+        ByteBuffer block = chunk.duplicate();
+        long start = System.nanoTime(), deadline = start + nanos;
+        int count = 0;
+        
+        do {
+            block.clear().limit(BLOCK);
+            channel.write(block, random.nextLong(size / BLOCK) * BLOCK);
+            channel.force(false);
+            count++;
+        } while (count < MAX_FSYNCS && System.nanoTime() < deadline);
+        
+        return (System.nanoTime() - start) / count / 1000;
+    }
+    
+    private static long measureRead(FileChannel channel, ByteBuffer chunk, long size, long nanos) throws IOException {
+        long start = System.nanoTime(), deadline = start + nanos, bytes = 0;
+        
+        do {
+            for (long position = 0; position < size; position += CHUNK) {
+                chunk.clear();
+                int read = channel.read(chunk, position);
+                if (read < 0) break;
+                bytes += read;
+            }
+        } while (System.nanoTime() < deadline);
+        
+        return toMegabytesPerSecond(bytes, System.nanoTime() - start);
+    }
+    
+    private static long measureRandomRead(FileChannel channel, ByteBuffer chunk, long size, SplittableRandom random,
+                                          long nanos) throws IOException {
+        ByteBuffer block = chunk.duplicate();
+        long start = System.nanoTime(), deadline = start + nanos, reads = 0;
+        
+        do {
+            for (int i = 0; i < RANDOM_CHUNK; i++) {
+                block.clear().limit(BLOCK);
+                channel.read(block, random.nextLong(size / BLOCK) * BLOCK);
+            }
+            reads += RANDOM_CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        return (System.nanoTime() - start) / reads;
+    }
+    
+    private static long measureMappedRead(MappedByteBuffer mapped, long nanos) {
+        int size = mapped.capacity();
+        long start = System.nanoTime(), deadline = start + nanos, bytes = 0, sum = 0;
+        
+        do {
+            for (int i = 0; i + 8 <= size; i += 8) sum += mapped.getLong(i);
+            bytes += size;
+        } while (System.nanoTime() < deadline);
+        
+        sink ^= sum;
+        return toMegabytesPerSecond(bytes, System.nanoTime() - start);
+    }
+    
+    // Average time to touch a random page of the mapping, in ns
+    private static long measureMappedRandomRead(MappedByteBuffer mapped, SplittableRandom random, long nanos) {
+        int pages = mapped.capacity() / BLOCK;
+        long start = System.nanoTime(), deadline = start + nanos, reads = 0, sum = 0;
+        
+        do {
+            for (int i = 0; i < RANDOM_CHUNK; i++) sum += mapped.getLong(random.nextInt(pages) * BLOCK);
+            reads += RANDOM_CHUNK;
+        } while (System.nanoTime() < deadline);
+        
+        sink ^= sum;
+        return (System.nanoTime() - start) / reads;
+    }
+}
@@ -0,0 +1,22 @@
+package pw.lemmmy.schws;
+
+// A failed submission. Retryable failures (network problems, the server restarting) are kept in the outbox and tried
+// again later, while terminal ones (the server rejecting the data itself) are dropped.
+public class SubmissionException extends RuntimeException {
+    private final String error;
+    private final boolean retryable;
+    
+    SubmissionException(String error, boolean retryable, String message, Throwable cause) {
+        super(message, cause);
+        this.error = error;
+        this.retryable = retryable;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
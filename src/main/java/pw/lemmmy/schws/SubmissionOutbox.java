@@ -0,0 +1,115 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Holds a submission that failed for a retryable reason, so it survives restarts and can be sent again later instead
+// of being lost. The file is replaced atomically, so a crash mid-write never leaves a half-written payload behind.
+public class SubmissionOutbox {
+    private static final Gson GSON = new GsonBuilder().create();
+    
+    private static final long BASE_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_DELAY_MS = TimeUnit.HOURS.toMillis(12);
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(14);
+    
+    private final File outboxFile;
+    
+    SubmissionOutbox(File outboxFile) {
+        this.outboxFile = outboxFile;
+    }
+    
+    public boolean isEmpty() {
+        return !outboxFile.exists();
+    }
+    
+    public synchronized Entry load() {
+        if (!outboxFile.exists()) return null;
+        
+        try (BufferedReader br = Files.newBufferedReader(outboxFile.toPath())) {
+            Entry entry = GSON.fromJson(br, Entry.class);
+            if (entry == null || entry.token == null || entry.stats == null) return null;
+            return entry;
+        } catch (IOException | JsonParseException e) {
+            SCHardwareSurvey.LOG.error("Error reading submission outbox file", e);
+            return null;
+        }
+    }
+    
+    public synchronized void store(Entry entry) {
+        Path target = outboxFile.toPath();
+        Path temp = target.resolveSibling(outboxFile.getName() + ".tmp");
+        
+        try {
+            try (BufferedWriter bw = Files.newBufferedWriter(temp)) {
+                GSON.toJson(entry, bw);
+            }
+            
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error writing submission outbox file", e);
+        }
+    }
+    
+    public synchronized void clear() {
+        try {
+            Files.deleteIfExists(outboxFile.toPath());
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error deleting submission outbox file", e);
+        }
+    }
+    
+    // Records a failed attempt and schedules the next one, with jittered exponential backoff
+    public void failed(Entry entry) {
+        entry.attempts++;
+        
+        long delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(entry.attempts - 1, 20));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        entry.nextAttemptAt = System.currentTimeMillis() + delay;
+        
+        store(entry);
+    }
+    
+    public static class Entry {
+        String token;
+        long createdAt;
+        int attempts;
+        long nextAttemptAt;
+        Map<String, String> stats;
+        
+        // for re-surveys, the token of the submission these stats update
+        String previous;
+        
+        private Entry() {} // for Gson
+        
+        Entry(String token, Map<String, String> stats) {
+            this.token = token;
+            this.stats = stats;
+            this.createdAt = System.currentTimeMillis();
+        }
+        
+        boolean isDue() {
+            return System.currentTimeMillis() >= nextAttemptAt;
+        }
+        
+        boolean isExpired() {
+            return System.currentTimeMillis() - createdAt > MAX_AGE_MS;
+        }
+    }
+}
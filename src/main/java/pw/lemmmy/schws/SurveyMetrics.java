@@ -0,0 +1,115 @@
+package pw.lemmmy.schws;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SurveyMetrics implements SurveyMetricsMXBean {
+    public static final SurveyMetrics INSTANCE = new SurveyMetrics();
+    
+    private static final String OBJECT_NAME = "pw.lemmmy.schws:type=SurveyMetrics";
+    
+    private final Map<String, Long> collectorNanos = new ConcurrentHashMap<>();
+    private final Map<String, Long> stageNanos = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> errorCounts = new ConcurrentHashMap<>();
+    
+    private final AtomicLong submissions = new AtomicLong();
+    private volatile long serialisationNanos, connectNanos, uploadNanos, timeToFirstByteNanos, totalNanos;
+    private volatile long requestBytes, responseBytes;
+    
+    private SurveyMetrics() {}
+    
+    // Registering starts up the platform MBean server, so this is only done for players who will actually be surveyed
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            SCHardwareSurvey.LOG.warn("Could not register survey metrics MBean", e);
+        }
+    }
+    
+    void recordCollector(String name, long nanos) {
+        collectorNanos.put(name, nanos);
+    }
+    
+    void recordStage(String name, long nanos) {
+        stageNanos.put(name, nanos);
+    }
+    
+    void recordSubmission(long serialisationNanos, long connectNanos, long uploadNanos, long timeToFirstByteNanos,
+                          long totalNanos, long requestBytes, long responseBytes) {
+        submissions.incrementAndGet();
+        this.serialisationNanos = serialisationNanos;
+        this.connectNanos = connectNanos;
+        this.uploadNanos = uploadNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.totalNanos = totalNanos;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+    }
+    
+    void recordError(String type) {
+        errorCounts.computeIfAbsent(type, k -> new AtomicLong()).incrementAndGet();
+    }
+    
+    @Override
+    public Map<String, Long> getCollectorNanos() {
+        return new TreeMap<>(collectorNanos);
+    }
+    
+    @Override
+    public Map<String, Long> getStageNanos() {
+        return new TreeMap<>(stageNanos);
+    }
+    
+    @Override
+    public long getSubmissions() {
+        return submissions.get();
+    }
+    
+    @Override
+    public long getLastSerialisationNanos() {
+        return serialisationNanos;
+    }
+    
+    @Override
+    public long getLastConnectNanos() {
+        return connectNanos;
+    }
+    
+    @Override
+    public long getLastUploadNanos() {
+        return uploadNanos;
+    }
+    
+    @Override
+    public long getLastTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+    
+    @Override
+    public long getLastTotalNanos() {
+        return totalNanos;
+    }
+    
+    @Override
+    public long getLastRequestBytes() {
+        return requestBytes;
+    }
+    
+    @Override
+    public long getLastResponseBytes() {
+        return responseBytes;
+    }
+    
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorCounts.forEach((k, v) -> counts.put(k, v.get()));
+        return counts;
+    }
+}
@@ -0,0 +1,21 @@
+package pw.lemmmy.schws;
+
+import java.util.Map;
+
+// Exposed over JMX as pw.lemmmy.schws:type=SurveyMetrics, so the cost of the survey can be inspected from JMC or
+// VisualVM without attaching a profiler. All durations are in nanoseconds.
+public interface SurveyMetricsMXBean {
+    Map<String, Long> getCollectorNanos();
+    Map<String, Long> getStageNanos();
+    
+    long getSubmissions();
+    long getLastSerialisationNanos();
+    long getLastConnectNanos();
+    // compressing and writing the body to the connection, after it was serialised
+    long getLastUploadNanos();
+    long getLastTimeToFirstByteNanos();
+    long getLastTotalNanos();
+    long getLastRequestBytes();
+    long getLastResponseBytes();
+    Map<String, Long> getErrorCounts();
+}
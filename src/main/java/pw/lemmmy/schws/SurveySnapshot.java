@@ -0,0 +1,173 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// A gzipped copy of the last stats the server accepted, along with a hash of their content. Re-surveys compare
+// against it to decide whether there is anything new to send, and if so, which keys changed.
+public class SurveySnapshot {
+    private static final Gson GSON = new GsonBuilder().create();
+    
+    // the collector StatRegistry files the <name>_timeout markers under
+    private static final String RUNNER = "runner";
+    
+    private final File snapshotFile;
+    
+    SurveySnapshot(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+    
+    // Related keys that the server only accepts together, e.g. jvm_args and the jvm_arg[i] entries it counts
+    private static String getGroup(String key) {
+        if (key.startsWith("jvm_arg")) return "jvm_args";
+        if (key.startsWith("gl_ext")) return "gl_exts";
+        if (key.startsWith("gl_caps_")) return "gl_caps";
+        return key;
+    }
+    
+    private static boolean isGroupItem(String key) {
+        return key.startsWith("jvm_arg[") || key.startsWith("gl_ext[");
+    }
+    
+    static String hash(Map<String, String> stats) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> stat : new TreeMap<>(stats).entrySet()) {
+                // stats that differ from run to run without the hardware changing never trigger a re-submission
+                if (StatRegistry.isVolatile(stat.getKey())) continue;
+                digest.update((stat.getKey() + "=" + stat.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+    
+    // The keys to send to bring the previous stats up to date. A change to any key of a group sends the whole group.
+    static Delta diff(Map<String, String> previous, Map<String, String> current) {
+        Set<String> changedGroups = new HashSet<>();
+        Set<String> keys = new HashSet<>(previous.keySet());
+        keys.addAll(current.keySet());
+        for (String key : keys) {
+            if (!Objects.equals(previous.get(key), current.get(key))) changedGroups.add(getGroup(key));
+        }
+        
+        Delta delta = new Delta();
+        current.forEach((key, value) -> {
+            if (changedGroups.contains(getGroup(key))) delta.changed.put(key, value);
+        });
+        
+        // a collector that timed out or failed outright says nothing about whether its stats are gone, so only those
+        // that reported something this time can remove anything, along with last time's timeout markers
+        Set<String> reported = getReportingCollectors(current);
+        previous.keySet().forEach(key -> {
+            // group items are replaced along with their count, the server doesn't store them individually
+            if (current.containsKey(key) || isGroupItem(key)) return;
+            
+            String collector = getCollector(key);
+            if (RUNNER.equals(collector) || reported.contains(collector)) delta.removed.add(key);
+        });
+        return delta;
+    }
+    
+    // The current stats, plus the previous values of any collector that reported nothing this time, such as one that
+    // was abandoned for running over its budget. The server keeps those values, so the snapshot should too.
+    static Map<String, String> carryOver(Map<String, String> previous, Map<String, String> current) {
+        Set<String> reported = getReportingCollectors(current);
+        Map<String, String> merged = new LinkedHashMap<>(current);
+        previous.forEach((key, value) -> {
+            String collector = getCollector(key);
+            if (collector != null && !collector.equals(RUNNER) && !reported.contains(collector)) {
+                merged.putIfAbsent(key, value);
+            }
+        });
+        return merged;
+    }
+    
+    private static String getCollector(String key) {
+        StatDefinition definition = StatRegistry.get(key);
+        return definition != null ? definition.collector : null;
+    }
+    
+    // Timeout markers belong to the runner rather than the collector that timed out, so they don't count
+    private static Set<String> getReportingCollectors(Map<String, String> stats) {
+        Set<String> collectors = new HashSet<>();
+        for (String key : stats.keySet()) {
+            String collector = getCollector(key);
+            if (collector != null && !collector.equals(RUNNER)) collectors.add(collector);
+        }
+        return collectors;
+    }
+    
+    public synchronized Snapshot load() {
+        if (!snapshotFile.exists()) return null;
+        
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(snapshotFile)), StandardCharsets.UTF_8)) {
+            Snapshot snapshot = GSON.fromJson(reader, Snapshot.class);
+            if (snapshot == null || snapshot.token == null || snapshot.hash == null || snapshot.stats == null) return null;
+            return snapshot;
+        } catch (IOException | JsonParseException e) {
+            SCHardwareSurvey.LOG.error("Error reading survey snapshot file", e);
+            return null;
+        }
+    }
+    
+    public synchronized void store(String token, Map<String, String> stats) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.token = token;
+        snapshot.hash = hash(stats);
+        snapshot.stats = stats;
+        
+        Path target = snapshotFile.toPath();
+        Path temp = target.resolveSibling(snapshotFile.getName() + ".tmp");
+        
+        try {
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8)) {
+                GSON.toJson(snapshot, writer);
+            }
+            
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error writing survey snapshot file", e);
+        }
+    }
+    
+    public synchronized void clear() {
+        try {
+            Files.deleteIfExists(snapshotFile.toPath());
+        } catch (IOException e) {
+            SCHardwareSurvey.LOG.error("Error deleting survey snapshot file", e);
+        }
+    }
+    
+    public static class Snapshot {
+        String token;
+        String hash;
+        Map<String, String> stats;
+    }
+    
+    static class Delta {
+        final Map<String, String> changed = new LinkedHashMap<>();
+        final List<String> removed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,96 @@
+package pw.lemmmy.schws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Times each client tick, from ClientTickEvent START to END, while a world is loaded. Ticks running over their 50 ms
+// are what starve the render loop - usually modded logic, e.g. a busy CC:Tweaked computer - so the slow end of the
+// distribution is what we're after. The client thread is the only writer, but any thread can take a snapshot at any
+// time without locking it: the writer bumps a version to odd before touching the histogram and back to even after, and
+// a reader simply retries its copy if the version was odd or moved while it was copying. Every shared field is an
+// atomic or volatile, so the copy is ordered between the two version reads. Nothing is allocated per tick.
+class TickTimeRecorder {
+    // a whole tick's worth of time at 20 tps
+    private static final long OVERRUN_MICROS = 50_000;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final AtomicLong version = new AtomicLong();
+    private volatile long count = 0, max = 0, overruns = 0;
+    
+    // only touched on the client thread
+    private boolean recording = false;
+    private long tickStart = -1;
+    
+    void start() {
+        recording = true;
+        tickStart = -1;
+    }
+    
+    // Pauses recording, e.g. while there's no world. What has been recorded so far is kept.
+    void stop() {
+        recording = false;
+    }
+    
+    void onTickStart(long nanos) {
+        if (recording) tickStart = nanos;
+    }
+    
+    void onTickEnd(long nanos) {
+        if (!recording || tickStart < 0) return;
+        
+        long micros = Math.min(LatencyHistogram.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(nanos - tickStart));
+        int index = LatencyHistogram.getIndex(Math.max(0, micros));
+        tickStart = -1;
+        
+        // single writer, so plain read-modify-writes are safe, they only need to be visible to readers
+        long v = version.get();
+        version.set(v + 1);
+        counts.set(index, counts.get(index) + 1);
+        count = count + 1;
+        if (micros > max) max = micros;
+        if (micros >= OVERRUN_MICROS) overruns = overruns + 1;
+        version.set(v + 2);
+    }
+    
+    // A consistent copy of everything recorded so far, safe to call from any thread
+    Snapshot snapshot() {
+        long[] copy = new long[LatencyHistogram.BUCKETS];
+        
+        while (true) {
+            long before = version.get();
+            if ((before & 1) == 0) {
+                for (int i = 0; i < copy.length; i++) copy[i] = counts.get(i);
+                long count = this.count, max = this.max, overruns = this.overruns;
+                if (version.get() == before) return new Snapshot(copy, count, max, overruns);
+            }
+            
+            // the writer is mid-update, which only takes a few nanoseconds
+            Thread.yield();
+        }
+    }
+    
+    // All in µs
+    void collect(StatRecord stats) {
+        Snapshot snapshot = snapshot();
+        LatencyHistogram ticks = snapshot.histogram;
+        if (ticks.getCount() == 0) return;
+        
+        stats.putLong("tick_count", ticks.getCount());
+        stats.putLong("tick_time_p50", ticks.getPercentile(0.50));
+        stats.putLong("tick_time_p95", ticks.getPercentile(0.95));
+        stats.putLong("tick_time_p99", ticks.getPercentile(0.99));
+        stats.putLong("tick_time_max", ticks.getMax());
+        stats.putLong("tick_overruns", snapshot.overruns);
+    }
+    
+    static class Snapshot {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long overruns;
+        
+        private Snapshot(long[] counts, long count, long max, long overruns) {
+            histogram.copyFrom(counts, count, max);
+            this.overruns = overruns;
+        }
+    }
+}
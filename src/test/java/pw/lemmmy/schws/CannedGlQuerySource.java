@@ -0,0 +1,61 @@
+package pw.lemmmy.schws;
+
+import java.util.*;
+
+// A fake GL with a fixed set of answers. Queries for anything that wasn't given a value flag GL_INVALID_ENUM, the same
+// way a driver that doesn't support them would.
+class CannedGlQuerySource implements GlQuerySource {
+    static final int GL_INVALID_ENUM = 0x0500;
+    
+    private final Map<Integer, String> strings = new HashMap<>();
+    private final Map<Integer, Integer> integers = new HashMap<>();
+    private final Set<String> extensions = new HashSet<>();
+    private final Deque<Integer> errors = new ArrayDeque<>();
+    
+    CannedGlQuerySource withString(int name, String value) {
+        strings.put(name, value);
+        return this;
+    }
+    
+    CannedGlQuerySource withInteger(int pname, int value) {
+        integers.put(pname, value);
+        return this;
+    }
+    
+    CannedGlQuerySource withExtensions(String... names) {
+        extensions.addAll(Arrays.asList(names));
+        return this;
+    }
+    
+    // Leaves an error in the queue, as if an earlier unrelated GL call had failed
+    CannedGlQuerySource withPendingError(int error) {
+        errors.add(error);
+        return this;
+    }
+    
+    @Override
+    public String getString(int name) {
+        return strings.get(name);
+    }
+    
+    @Override
+    public int getInteger(int pname) {
+        Integer value = integers.get(pname);
+        if (value != null) return value;
+        
+        // like GL, each error flag is only recorded once until it is read
+        if (!errors.contains(GL_INVALID_ENUM)) errors.add(GL_INVALID_ENUM);
+        return 0;
+    }
+    
+    @Override
+    public int getError() {
+        Integer error = errors.poll();
+        return error == null ? GL_NO_ERROR : error;
+    }
+    
+    @Override
+    public boolean hasExtension(String name) {
+        return extensions.contains(name);
+    }
+}
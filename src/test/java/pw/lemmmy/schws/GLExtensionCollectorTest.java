@@ -0,0 +1,84 @@
+package pw.lemmmy.schws;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GLExtensionCollectorTest {
+    private static Map<String, String> collect(GLExtensionSource source) {
+        StatRecord stats = new StatRecord();
+        new GLExtensionCollector(source).collect(stats);
+        return stats.toStringMap();
+    }
+    
+    private static Map<String, String> expand(Map<String, String> stats) {
+        return GLCapsRegistry.expand(stats.get(GLCapsRegistry.VERSION_STAT), stats.get(GLCapsRegistry.BITS_STAT));
+    }
+    
+    @Test
+    public void knownExtensionsBecomeBits() {
+        Map<String, String> stats = collect(RecordedExtensionSource.fromString(
+            "GL_ARB_buffer_storage GL_ARB_compatibility GL_NVX_gpu_memory_info"));
+        Map<String, String> flags = expand(stats);
+        
+        assertEquals(Integer.toString(GLCapsRegistry.VERSION), stats.get(GLCapsRegistry.VERSION_STAT));
+        assertEquals("true", flags.get("gl_caps[ARB_buffer_storage]"));
+        assertEquals("true", flags.get("gl_caps[ARB_compatibility]"));
+        assertEquals("true", flags.get("gl_caps[NVX_gpu_memory_info]"));
+        assertEquals("false", flags.get("gl_caps[ARB_bindless_texture]"));
+        assertEquals(3, flags.values().stream().filter("true"::equals).count());
+        
+        // nothing known is also sent by name
+        assertEquals("0", stats.get("gl_exts"));
+        assertNull(stats.get("gl_ext[0]"));
+    }
+    
+    @Test
+    public void unknownExtensionsAreSentByName() {
+        Map<String, String> stats = collect(RecordedExtensionSource.fromString(
+            " GL_APPLE_client_storage  GL_ARB_buffer_storage\tGL_WIN_swap_hint GL_APPLE_client_storage\n"));
+        
+        // in the driver's order, with their prefix, and each only once
+        assertEquals("2", stats.get("gl_exts"));
+        assertEquals("GL_APPLE_client_storage", stats.get("gl_ext[0]"));
+        assertEquals("GL_WIN_swap_hint", stats.get("gl_ext[1]"));
+        assertEquals("true", expand(stats).get("gl_caps[ARB_buffer_storage]"));
+    }
+    
+    @Test
+    public void namesWithoutThePrefixAreStillInterned() {
+        Map<String, String> stats = collect(RecordedExtensionSource.fromString("ARB_buffer_storage"));
+        
+        assertEquals("0", stats.get("gl_exts"));
+        assertEquals("true", expand(stats).get("gl_caps[ARB_buffer_storage]"));
+    }
+    
+    @Test
+    public void unknownExtensionsAreCapped() {
+        List<String> extensions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) extensions.add("GL_TEST_unknown_" + i);
+        extensions.add("GL_ARB_buffer_storage");
+        
+        Map<String, String> stats = collect(new RecordedExtensionSource(extensions));
+        
+        assertEquals("128", stats.get("gl_exts"));
+        assertEquals("GL_TEST_unknown_127", stats.get("gl_ext[127]"));
+        assertNull(stats.get("gl_ext[128]"));
+        
+        // known extensions past the cap are still recorded
+        assertEquals("true", expand(stats).get("gl_caps[ARB_buffer_storage]"));
+    }
+    
+    @Test
+    public void noExtensionsGivesAnEmptyBitset() {
+        Map<String, String> stats = collect(new RecordedExtensionSource(new ArrayList<>()));
+        
+        assertEquals("0", stats.get("gl_exts"));
+        assertEquals("", stats.get(GLCapsRegistry.BITS_STAT));
+        assertFalse(expand(stats).containsValue("true"));
+    }
+}
@@ -0,0 +1,136 @@
+package pw.lemmmy.schws;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GLLimitsProbeTest {
+    private static final int GL_VERSION = 0x1F02;
+    private static final int GL_INVALID_OPERATION = 0x0502;
+    
+    private static final int GL_MAX_VERTEX_UNIFORM_COMPONENTS = 0x8B4A;
+    private static final int GL_MAX_FRAGMENT_UNIFORM_COMPONENTS = 0x8B49;
+    private static final int GL_MAX_VERTEX_ATTRIBS = 0x8869;
+    private static final int GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS = 0x8B4C;
+    private static final int GL_MAX_TEXTURE_IMAGE_UNITS = 0x8872;
+    private static final int GL_MAX_ARRAY_TEXTURE_LAYERS = 0x88FF;
+    private static final int GL_MAX_SAMPLES = 0x8D57;
+    private static final int GL_MAX_TEXTURE_BUFFER_SIZE = 0x8C2B;
+    private static final int GL_MAX_UNIFORM_BLOCK_SIZE = 0x8A30;
+    private static final int GL_MAX_SHADER_STORAGE_BLOCK_SIZE = 0x90DE;
+    private static final int GL_GPU_MEMORY_INFO_DEDICATED_VIDMEM_NVX = 0x9048;
+    private static final int GL_GPU_MEMORY_INFO_CURRENT_AVAILABLE_VIDMEM_NVX = 0x9049;
+    private static final int GL_TEXTURE_FREE_MEMORY_ATI = 0x87FC;
+    
+    // A GL 2.1 context answering all the queries it supports
+    private static CannedGlQuerySource gl21() {
+        return new CannedGlQuerySource()
+            .withString(GL_VERSION, "2.1 INTEL-18.8.4")
+            .withInteger(GL_MAX_VERTEX_UNIFORM_COMPONENTS, 4096)
+            .withInteger(GL_MAX_FRAGMENT_UNIFORM_COMPONENTS, 4096)
+            .withInteger(GL_MAX_VERTEX_ATTRIBS, 16)
+            .withInteger(GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS, 16)
+            .withInteger(GL_MAX_TEXTURE_IMAGE_UNITS, 16);
+    }
+    
+    private static CannedGlQuerySource gl46() {
+        return gl21()
+            .withString(GL_VERSION, "4.6.0 NVIDIA 531.79")
+            .withInteger(GL_MAX_ARRAY_TEXTURE_LAYERS, 2048)
+            .withInteger(GL_MAX_SAMPLES, 32)
+            .withInteger(GL_MAX_TEXTURE_BUFFER_SIZE, 134217728)
+            .withInteger(GL_MAX_UNIFORM_BLOCK_SIZE, 65536)
+            .withInteger(GL_MAX_SHADER_STORAGE_BLOCK_SIZE, Integer.MAX_VALUE);
+    }
+    
+    private static Map<String, String> collect(GlQuerySource gl) {
+        StatRecord stats = new StatRecord();
+        new GLLimitsProbe(gl).collect(stats);
+        return stats.toStringMap();
+    }
+    
+    @Test
+    public void reportsEveryLimitTheContextSupports() {
+        Map<String, String> stats = collect(gl46()
+            .withExtensions("GL_NVX_gpu_memory_info")
+            .withInteger(GL_GPU_MEMORY_INFO_DEDICATED_VIDMEM_NVX, 8388608)
+            .withInteger(GL_GPU_MEMORY_INFO_CURRENT_AVAILABLE_VIDMEM_NVX, 6291456));
+        
+        assertEquals("16", stats.get("gl_caps[gl_max_vertex_attribs]"));
+        assertEquals("32", stats.get("gl_caps[gl_max_samples]"));
+        assertEquals("134217728", stats.get("gl_caps[gl_max_texture_buffer_size]"));
+        assertEquals("65536", stats.get("gl_caps[gl_max_uniform_block_size]"));
+        assertEquals("2147483647", stats.get("gl_caps[gl_max_shader_storage_block_size]"));
+        assertEquals("8388608", stats.get("opengl_memory"));
+        assertEquals("6291456", stats.get("opengl_memory_available"));
+        assertEquals("opengl_memory_available_ati", stats.get("gl_limits_unsupported"));
+    }
+    
+    @Test
+    public void skipsLimitsAboveTheContextVersion() {
+        Map<String, String> stats = collect(gl21());
+        
+        assertEquals("4096", stats.get("gl_caps[gl_max_vertex_uniforms]"));
+        assertEquals("16", stats.get("gl_caps[gl_max_texture_image_units]"));
+        assertNull(stats.get("gl_caps[gl_max_samples]"));
+        assertNull(stats.get("gl_caps[gl_max_uniform_block_size]"));
+        assertEquals("gl_max_array_texture_layers,gl_max_samples,gl_max_texture_buffer_size,gl_max_uniform_block_size,"
+            + "gl_max_shader_storage_block_size,opengl_memory,opengl_memory_available,opengl_memory_available_ati",
+            stats.get("gl_limits_unsupported"));
+    }
+    
+    @Test
+    public void extensionsStandInForTheCoreVersion() {
+        Map<String, String> stats = collect(gl21()
+            .withExtensions("GL_ARB_uniform_buffer_object", "GL_ATI_meminfo")
+            .withInteger(GL_MAX_UNIFORM_BLOCK_SIZE, 65536)
+            .withInteger(GL_TEXTURE_FREE_MEMORY_ATI, 4194304));
+        
+        assertEquals("65536", stats.get("gl_caps[gl_max_uniform_block_size]"));
+        assertEquals("4194304", stats.get("opengl_memory_available_ati"));
+        assertFalse(stats.get("gl_limits_unsupported").contains("gl_max_uniform_block_size"));
+        assertFalse(stats.get("gl_limits_unsupported").contains("opengl_memory_available_ati"));
+    }
+    
+    @Test
+    public void rejectedQueriesAreReportedUnsupported() {
+        // claims 4.6, but the driver rejects the SSBO query anyway
+        Map<String, String> stats = collect(new CannedGlQuerySource()
+            .withString(GL_VERSION, "4.6.0 - Build 31.0.101.2111")
+            .withInteger(GL_MAX_VERTEX_UNIFORM_COMPONENTS, 16384)
+            .withInteger(GL_MAX_FRAGMENT_UNIFORM_COMPONENTS, 16384)
+            .withInteger(GL_MAX_VERTEX_ATTRIBS, 16)
+            .withInteger(GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS, 32)
+            .withInteger(GL_MAX_TEXTURE_IMAGE_UNITS, 32)
+            .withInteger(GL_MAX_ARRAY_TEXTURE_LAYERS, 2048)
+            .withInteger(GL_MAX_SAMPLES, 16)
+            .withInteger(GL_MAX_TEXTURE_BUFFER_SIZE, 134217728)
+            .withInteger(GL_MAX_UNIFORM_BLOCK_SIZE, 65536));
+        
+        assertNull(stats.get("gl_caps[gl_max_shader_storage_block_size]"));
+        assertEquals("16", stats.get("gl_caps[gl_max_samples]"));
+        assertEquals("65536", stats.get("gl_caps[gl_max_uniform_block_size]"));
+        assertEquals("opengl_memory,opengl_memory_available,opengl_memory_available_ati,"
+            + "gl_max_shader_storage_block_size", stats.get("gl_limits_unsupported"));
+    }
+    
+    @Test
+    public void earlierErrorsAreNotBlamedOnTheProbe() {
+        Map<String, String> stats = collect(gl46().withPendingError(GL_INVALID_OPERATION));
+        
+        assertEquals("32", stats.get("gl_caps[gl_max_samples]"));
+        assertEquals("opengl_memory,opengl_memory_available,opengl_memory_available_ati",
+            stats.get("gl_limits_unsupported"));
+    }
+    
+    @Test
+    public void parsesVersionStrings() {
+        assertEquals(46, GLLimitsProbe.parseVersion("4.6.0 NVIDIA 531.79"));
+        assertEquals(46, GLLimitsProbe.parseVersion("4.6 (Compatibility Profile) Mesa 23.1.9"));
+        assertEquals(21, GLLimitsProbe.parseVersion("2.1 Metal - 83.1"));
+        assertEquals(0, GLLimitsProbe.parseVersion("OpenGL ES 3.2"));
+        assertEquals(0, GLLimitsProbe.parseVersion(null));
+    }
+}
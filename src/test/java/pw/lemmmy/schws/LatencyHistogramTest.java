@@ -0,0 +1,133 @@
+package pw.lemmmy.schws;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    // each power of two is split into 16 buckets, so a bucket is never wider than 1/16 of its lower bound
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 16;
+    
+    @Test
+    public void smallValuesAreExact() {
+        for (int value = 0; value < 32; value++) {
+            int index = LatencyHistogram.getIndex(value);
+            assertEquals(value, index);
+            assertEquals(value, LatencyHistogram.getLowerBound(index));
+            assertEquals(value, LatencyHistogram.getUpperBound(index));
+        }
+    }
+    
+    @Test
+    public void bucketsCoverTheRangeWithoutGapsOrOverlaps() {
+        assertEquals(0, LatencyHistogram.getLowerBound(0));
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 1));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getIndex(LatencyHistogram.MAX_VALUE));
+        
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long lower = LatencyHistogram.getLowerBound(i), upper = LatencyHistogram.getUpperBound(i);
+            assertTrue("bucket " + i + " is empty", lower <= upper);
+            assertEquals("lower bound of bucket " + i, i, LatencyHistogram.getIndex(lower));
+            assertEquals("upper bound of bucket " + i, i, LatencyHistogram.getIndex(upper));
+            
+            if (i + 1 < LatencyHistogram.BUCKETS) {
+                assertEquals("gap after bucket " + i, upper + 1, LatencyHistogram.getLowerBound(i + 1));
+            }
+        }
+    }
+    
+    @Test
+    public void bucketsAreNarrowRelativeToTheirValues() {
+        for (int i = 32; i < LatencyHistogram.BUCKETS; i++) {
+            long lower = LatencyHistogram.getLowerBound(i), upper = LatencyHistogram.getUpperBound(i);
+            assertTrue("bucket " + i + " is too wide", upper - lower + 1 <= lower * MAX_RELATIVE_ERROR);
+        }
+    }
+    
+    @Test
+    public void powersOfTwoStartNewRanges() {
+        for (int bit = 5; bit < 31; bit++) {
+            long value = 1L << bit;
+            assertEquals(value, LatencyHistogram.getLowerBound(LatencyHistogram.getIndex(value)));
+            assertEquals(value - 1, LatencyHistogram.getUpperBound(LatencyHistogram.getIndex(value - 1)));
+        }
+    }
+    
+    @Test
+    public void percentilesAreWithinTheErrorBound() {
+        SplittableRandom random = new SplittableRandom(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        
+        // log-uniform from 1 µs to about 16 s, like frame times with a long tail
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(16_000_000));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        
+        for (double fraction : new double[] { 0.01, 0.1, 0.5, 0.9, 0.95, 0.99, 0.999, 1 }) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            long reported = histogram.getPercentile(fraction);
+            
+            assertTrue("p" + fraction + " below the exact value", reported >= exact);
+            assertTrue("p" + fraction + " too far above the exact value",
+                reported - exact <= Math.max(0, exact * MAX_RELATIVE_ERROR));
+        }
+        
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(1));
+    }
+    
+    @Test
+    public void percentilesNeverExceedTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        
+        assertEquals(1000, histogram.getPercentile(0.5));
+        assertEquals(1000, histogram.getPercentile(0.99));
+    }
+    
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(LatencyHistogram.MAX_VALUE + 1);
+        
+        assertEquals(3, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.1));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentile(0.5));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentile(1));
+    }
+    
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getMax());
+    }
+    
+    @Test
+    public void mergeAndResetKeepCountsConsistent() {
+        LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) a.record(i);
+        for (int i = 11; i <= 20; i++) b.record(i);
+        
+        a.merge(b);
+        assertEquals(20, a.getCount());
+        assertEquals(20, a.getMax());
+        assertEquals(10, a.getPercentile(0.5));
+        
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getPercentile(0.5));
+    }
+}
@@ -0,0 +1,25 @@
+package pw.lemmmy.schws;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+// An extension list captured earlier, e.g. from a GL_EXTENSIONS string in a bug report or log
+class RecordedExtensionSource implements GLExtensionSource {
+    private final Collection<String> extensions;
+    
+    RecordedExtensionSource(Collection<String> extensions) {
+        this.extensions = Collections.unmodifiableCollection(new LinkedHashSet<>(extensions));
+    }
+    
+    // Accepts the space separated format used by glGetString(GL_EXTENSIONS)
+    static RecordedExtensionSource fromString(String extensions) {
+        return new RecordedExtensionSource(Arrays.asList(extensions.trim().split("\\s+")));
+    }
+    
+    @Override
+    public Collection<String> getExtensions() {
+        return extensions;
+    }
+}
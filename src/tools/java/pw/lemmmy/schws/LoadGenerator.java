@@ -0,0 +1,133 @@
+package pw.lemmmy.schws;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Drives many simulated clients submitting at once through the mod's own submission code, and reports the latency
+// percentiles and errors seen, for capacity planning before a release sends a wave of players at the server. Each
+// client is a thread doing a full blocking submission, exactly like the mod's submitter thread. Without --endpoint, a
+// StubServer is started in-process, with any latency and failures asked for. Every submission is a different record
+// from PopulationGenerator, so the server sees a realistic mix of payloads rather than one repeated response.
+//
+// Don't point this at the production server.
+public class LoadGenerator {
+    private final String endpoint;
+    private final int submissions, concurrency;
+    private final PopulationGenerator population;
+    
+    LoadGenerator(String endpoint, int submissions, int concurrency, PopulationGenerator population) {
+        this.endpoint = endpoint;
+        this.submissions = submissions;
+        this.concurrency = concurrency;
+        this.population = population;
+    }
+    
+    Result run() throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger remaining = new AtomicInteger(submissions);
+        Map<String, Integer> errors = new ConcurrentHashMap<>();
+        List<Future<LatencyHistogram>> workers = new ArrayList<>();
+        
+        // all the clients start together, so the first requests arrive as one burst like a modpack release would
+        CountDownLatch ready = new CountDownLatch(concurrency), go = new CountDownLatch(1);
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(clients.submit(() -> {
+                LatencyHistogram latencies = new LatencyHistogram();
+                ready.countDown();
+                go.await();
+                
+                int index;
+                while ((index = remaining.getAndDecrement()) > 0) {
+                    // generated outside the timing, it isn't part of the submission's latency
+                    Map<String, String> stats = population.generate(index).toStringMap();
+                    
+                    long start = System.nanoTime();
+                    try {
+                        StatsSubmitter.submitInternal(endpoint, UUID.randomUUID().toString(), stats, null, null);
+                    } catch (SubmissionException e) {
+                        errors.merge(e.getError(), 1, Integer::sum);
+                    }
+                    latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+                return latencies;
+            }));
+        }
+        
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        
+        LatencyHistogram latencies = new LatencyHistogram();
+        try {
+            for (Future<LatencyHistogram> worker : workers) latencies.merge(worker.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            clients.shutdownNow();
+        }
+        
+        return new Result(latencies, errors, System.nanoTime() - start);
+    }
+    
+    static class Result {
+        final LatencyHistogram latencies;
+        final Map<String, Integer> errors;
+        final long nanos;
+        
+        Result(LatencyHistogram latencies, Map<String, Integer> errors, long nanos) {
+            this.latencies = latencies;
+            this.errors = new TreeMap<>(errors);
+            this.nanos = nanos;
+        }
+        
+        void print() {
+            long total = latencies.getCount();
+            int failed = errors.values().stream().mapToInt(Integer::intValue).sum();
+            
+            System.out.printf("%d submissions in %.1f s, %.0f per second, %d failed%n",
+                total, nanos / 1e9, total / (nanos / 1e9), failed);
+            System.out.printf("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latencies.getPercentile(0.5) / 1e3, latencies.getPercentile(0.9) / 1e3,
+                latencies.getPercentile(0.99) / 1e3, latencies.getPercentile(0.999) / 1e3, latencies.getMax() / 1e3);
+            errors.forEach((error, count) -> System.out.printf("  %s: %d%n", error, count));
+        }
+    }
+    
+    // Usage: LoadGenerator [--submissions 5000] [--concurrency 500] [--seed 1] [--endpoint <url>]
+    //                      [--latency <ms>] [--jitter <ms>] [--failure-rate <0-1>] [--failure error|status|drop]
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        int submissions = (int) ToolOptions.getLong(options, "submissions", 5000);
+        int concurrency = (int) ToolOptions.getLong(options, "concurrency", 500);
+        PopulationGenerator population = new PopulationGenerator(ToolOptions.getLong(options, "seed", 1));
+        
+        // the submitter logs through the mod's logger, which FML would normally have set up
+        SCHardwareSurvey.LOG = org.apache.logging.log4j.LogManager.getLogger("schws-load");
+        
+        // plenty of keep-alive connections for the clients to reuse
+        System.setProperty("http.maxConnections", Integer.toString(concurrency));
+        
+        StubServer stub = null;
+        String endpoint = options.get("endpoint");
+        if (endpoint == null) {
+            stub = new StubServer(Paths.get(options.getOrDefault("stats", "backend/stats.json")), "1.12.2",
+                SCHardwareSurvey.VERSION);
+            stub.setLatency(ToolOptions.getLong(options, "latency", 0), ToolOptions.getLong(options, "jitter", 0));
+            stub.setFailures(
+                ToolOptions.getDouble(options, "failure-rate", 0),
+                StubServer.Failure.valueOf(options.getOrDefault("failure", "error").toUpperCase(Locale.ROOT))
+            );
+            stub.start(0, concurrency);
+            endpoint = stub.getEndpoint();
+        }
+        
+        try {
+            System.out.printf("%d submissions from %d concurrent clients to %s%n", submissions, concurrency, endpoint);
+            new LoadGenerator(endpoint, submissions, concurrency, population).run().print();
+        } finally {
+            if (stub != null) stub.stop();
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Generates synthetic survey responses in bulk, for load testing and benchmarking anything downstream of the survey
+// without real players' data. Each record is built through StatRecord, so it has exactly the keys, types, lengths and
+// order of StatsCollector.getStats() - everything the background and render thread collectors send; the world stage's
+// measurements aren't generated. The values are made up, but hang together the way real machines do: the OS decides
+// the architecture, launcher and likely GPUs, the GPU decides the GL version, vendor strings, limits and extensions,
+// and memory settings follow the machine's RAM.
+//
+// Record i only depends on the seed and i, so the same seed always gives the same population, however many threads
+// generate it. Records are generated in fixed-size chunks with a bounded number in flight and written out in order,
+// so memory use stays flat however many are asked for.
+public class PopulationGenerator {
+    private static final int CHUNK = 1024;
+    
+    private static final String[] LIMIT_NAMES = {
+        "gl_max_vertex_uniforms", "gl_max_fragment_uniforms", "gl_max_vertex_attribs",
+        "gl_max_vertex_texture_image_units", "gl_max_texture_image_units", "gl_max_array_texture_layers",
+        "gl_max_samples", "gl_max_texture_buffer_size", "gl_max_uniform_block_size",
+        "gl_max_shader_storage_block_size"
+    };
+    
+    // the GL version each limit needs, as major * 10 + minor, in the same order as GLLimitsProbe
+    private static final int[] LIMIT_VERSIONS = { 20, 20, 20, 20, 20, 30, 30, 31, 31, 43 };
+    
+    // keys are worked out once up front, formatting them for every record costs more than generating the values
+    private static final String[] LIMIT_KEYS = getKeys("gl_caps[%s]", LIMIT_NAMES);
+    private static final String[] JVM_ARG_KEYS = getKeys("jvm_arg[%s]", 16);
+    private static final String[] GL_EXT_KEYS = getKeys("gl_ext[%s]", 16);
+    
+    // Known extensions each get a fixed point between 0 and 1 from their name, and a GPU exposes the ones below its
+    // capability level, so a more capable GPU always has a superset of a less capable one's. Vendor extensions only
+    // turn up on that vendor's drivers.
+    private static final double[] CAP_THRESHOLDS = new double[GLCapsRegistry.size()];
+    private static final Vendor[] CAP_VENDORS = new Vendor[GLCapsRegistry.size()];
+    static {
+        for (int i = 0; i < CAP_THRESHOLDS.length; i++) {
+            String name = GLCapsRegistry.getName(i);
+            CAP_THRESHOLDS[i] = (mix(name.hashCode()) >>> 11) * 0x1.0p-53;
+            
+            if (name.startsWith("NV_") || name.startsWith("NVX_")) CAP_VENDORS[i] = Vendor.NVIDIA;
+            else if (name.startsWith("AMD_") || name.startsWith("ATI_")) CAP_VENDORS[i] = Vendor.AMD;
+            else if (name.startsWith("INTEL_")) CAP_VENDORS[i] = Vendor.INTEL;
+        }
+    }
+    
+    enum Vendor { NVIDIA, AMD, INTEL, APPLE }
+    
+    private static final Choice<Os> OSES = new Choice<Os>()
+        .add(58, new Os("Windows 10", new Choice<String>().add(1, "10.0"), Platform.WINDOWS))
+        .add(21, new Os("Windows 11", new Choice<String>().add(1, "10.0"), Platform.WINDOWS))
+        .add(3, new Os("Windows 7", new Choice<String>().add(1, "6.1"), Platform.WINDOWS))
+        .add(9, new Os("Linux", new Choice<String>()
+            .add(3, "5.15.0-91-generic").add(3, "6.1.0-17-amd64").add(2, "6.6.10-arch1-1").add(2, "6.5.0-14-generic"),
+            Platform.LINUX))
+        .add(9, new Os("Mac OS X", new Choice<String>()
+            .add(2, "10.15.7").add(2, "11.7.10").add(3, "12.7.2").add(4, "13.6.3").add(3, "14.2.1"), Platform.MAC));
+    
+    enum Platform { WINDOWS, LINUX, MAC }
+    
+    private static final Choice<String> JAVA_VERSIONS = new Choice<String>()
+        .add(45, "1.8.0_51").add(10, "1.8.0_74").add(15, "1.8.0_311").add(12, "1.8.0_382").add(10, "1.8.0_392")
+        .add(8, "1.8.0_202");
+    
+    private static final Choice<Cpu> DESKTOP_CPUS = new Choice<Cpu>()
+        .add(12, new Cpu(6, "Intel(R) Core(TM) i5-9600K CPU @ 3.70GHz"))
+        .add(10, new Cpu(12, "AMD Ryzen 5 3600 6-Core Processor"))
+        .add(9, new Cpu(12, "AMD Ryzen 5 5600X 6-Core Processor"))
+        .add(8, new Cpu(16, "AMD Ryzen 7 5800X 8-Core Processor"))
+        .add(8, new Cpu(8, "Intel(R) Core(TM) i7-7700HQ CPU @ 2.80GHz"))
+        .add(7, new Cpu(12, "Intel(R) Core(TM) i5-12400F"))
+        .add(6, new Cpu(4, "Intel(R) Core(TM) i5-4460  CPU @ 3.20GHz"))
+        .add(6, new Cpu(8, "Intel(R) Core(TM) i5-8250U CPU @ 1.60GHz"))
+        .add(5, new Cpu(20, "13th Gen Intel(R) Core(TM) i5-13600KF"))
+        .add(4, new Cpu(4, "Intel(R) Core(TM) i3-10100F CPU @ 3.60GHz"))
+        .add(3, new Cpu(2, "Intel(R) Pentium(R) CPU G4560 @ 3.50GHz"));
+    
+    private static final Choice<Cpu> MAC_CPUS = new Choice<Cpu>()
+        .add(5, new Cpu(8, "Apple M1"))
+        .add(3, new Cpu(8, "Apple M2"))
+        .add(2, new Cpu(12, "Intel(R) Core(TM) i7-9750H CPU @ 2.60GHz"))
+        .add(2, new Cpu(8, "Intel(R) Core(TM) i5-1038NG7 CPU @ 2.00GHz"));
+    
+    private static final Choice<Integer> MEMORY_GB = new Choice<Integer>()
+        .add(22, 8).add(45, 16).add(25, 32).add(5, 64).add(3, 4);
+    
+    // -Xmx in GiB, by launcher; the vanilla launcher's default is 2G and players rarely change it
+    private static final Choice<Integer> HEAP_GB = new Choice<Integer>()
+        .add(30, 2).add(25, 4).add(20, 6).add(15, 8).add(7, 10).add(3, 12);
+    
+    private static final Choice<String[]> FORGE = new Choice<String[]>()
+        .add(55, new String[] { "14.23.5.2860", "1.12.2-forge-14.23.5.2860" })
+        .add(20, new String[] { "14.23.5.2859", "1.12.2-forge-14.23.5.2859" })
+        .add(20, new String[] { "14.23.5.2847", "1.12.2-forge1.12.2-14.23.5.2847" })
+        .add(5, new String[] { "14.23.5.2768", "1.12.2-forge1.12.2-14.23.5.2768" });
+    
+    private static final Choice<String> OPTIFINE = new Choice<String>()
+        .add(60, "OptiFine_1.12.2_HD_U_G5").add(25, "OptiFine_1.12.2_HD_U_F5").add(15, "OptiFine_1.12.2_HD_U_E3");
+    
+    private static final Choice<String> FOAMFIX = new Choice<String>()
+        .add(70, "0.10.15-1.12.2").add(20, "0.10.14-1.12.2").add(10, "0.10.10-1.12.2");
+    
+    // GPUs by platform: the renderer string, VRAM in MiB (0 for shared memory), and how capable the driver is
+    private static final Choice<Gpu> WINDOWS_GPUS = new Choice<Gpu>()
+        .add(9, nvidia("NVIDIA GeForce GTX 1060 6GB/PCIe/SSE2", 6144, 0.95))
+        .add(8, nvidia("NVIDIA GeForce GTX 1650/PCIe/SSE2", 4096, 0.96))
+        .add(7, nvidia("NVIDIA GeForce RTX 2060/PCIe/SSE2", 6144, 0.97))
+        .add(9, nvidia("NVIDIA GeForce RTX 3060/PCIe/SSE2", 12288, 0.98))
+        .add(5, nvidia("NVIDIA GeForce RTX 3070/PCIe/SSE2", 8192, 0.98))
+        .add(4, nvidia("NVIDIA GeForce RTX 4060/PCIe/SSE2", 8192, 0.99))
+        .add(4, nvidia("NVIDIA GeForce GTX 970/PCIe/SSE2", 4096, 0.93))
+        .add(3, nvidia("NVIDIA GeForce GTX 750 Ti/PCIe/SSE2", 2048, 0.9))
+        .add(6, amd("Radeon RX 580 Series", 8192, 0.86))
+        .add(5, amd("AMD Radeon RX 6600", 8192, 0.88))
+        .add(3, amd("AMD Radeon RX 5700 XT", 8192, 0.88))
+        .add(5, amd("AMD Radeon(TM) Graphics", 0, 0.85))
+        .add(9, intel("Intel(R) UHD Graphics 620", "4.6.0 - Build 31.0.101.2111", 0.78))
+        .add(6, intel("Intel(R) Iris(R) Xe Graphics", "4.6.0 - Build 31.0.101.4255", 0.8))
+        .add(4, intel("Intel(R) HD Graphics 520", "4.6.0 - Build 26.20.100.7262", 0.75))
+        .add(3, intel("Intel(R) HD Graphics 4000", "4.0.0 - Build 10.18.10.5161", 0.45));
+    
+    private static final Choice<Gpu> LINUX_GPUS = new Choice<Gpu>()
+        .add(25, nvidia("NVIDIA GeForce GTX 1060 6GB/PCIe/SSE2", 6144, 0.95))
+        .add(20, nvidia("NVIDIA GeForce RTX 3060/PCIe/SSE2", 12288, 0.98))
+        .add(35, new Gpu(Vendor.AMD, "AMD Radeon RX 6600 (navi23, LLVM 15.0.7, DRM 3.54, 6.1.0-17-amd64)",
+            "4.6 (Compatibility Profile) Mesa 23.1.9", "AMD", 8192, 0.84))
+        .add(20, new Gpu(Vendor.INTEL, "Mesa Intel(R) UHD Graphics 620 (KBL GT2)",
+            "4.6 (Compatibility Profile) Mesa 23.1.9", "Intel", 0, 0.76));
+    
+    // 1.12 only gets the legacy 2.1 profile on macOS
+    private static final Choice<Gpu> MAC_GPUS = new Choice<Gpu>()
+        .add(55, new Gpu(Vendor.APPLE, "Apple M1", "2.1 Metal - 83.1", "Apple", 0, 0.25))
+        .add(30, new Gpu(Vendor.INTEL, "Intel(R) Iris(TM) Plus Graphics OpenGL Engine", "2.1 INTEL-18.8.4",
+            "Intel Inc.", 0, 0.25))
+        .add(15, new Gpu(Vendor.AMD, "AMD Radeon Pro 5500M OpenGL Engine", "2.1 ATI-4.6.21", "ATI Technologies Inc.",
+            4096, 0.25));
+    
+    private static final Choice<String> NVIDIA_DRIVERS = new Choice<String>()
+        .add(10, "472.12").add(15, "512.15").add(25, "531.79").add(25, "537.58").add(25, "546.33");
+    
+    // extensions the registry doesn't know about, sent by name, a few of which any given driver reports
+    private static final Map<Vendor, String[]> UNKNOWN_EXTENSIONS = new EnumMap<>(Vendor.class);
+    static {
+        UNKNOWN_EXTENSIONS.put(Vendor.NVIDIA, unknown("GL_NVX_blend_equation_advanced_multi_draw_buffers",
+            "GL_NVX_linked_gpu_multicast", "GL_NVX_progress_fence", "GL_NV_timeline_semaphore",
+            "GL_NV_memory_object_sparse", "GL_NV_shader_subgroup_partitioned", "GL_EXT_memory_object_win32",
+            "GL_EXT_semaphore_win32", "GL_KHR_shader_subgroup", "GL_WIN_swap_hint"));
+        UNKNOWN_EXTENSIONS.put(Vendor.AMD, unknown("GL_AMD_framebuffer_multisample_advanced",
+            "GL_AMD_gpu_shader_half_float", "GL_AMD_shader_trinary_minmax", "GL_AMD_pinned_memory",
+            "GL_AMDX_debug_output", "GL_MESA_pack_invert", "GL_MESA_texture_signed_rgba", "GL_WIN_swap_hint"));
+        UNKNOWN_EXTENSIONS.put(Vendor.INTEL, unknown("GL_INTEL_performance_query",
+            "GL_INTEL_fragment_shader_ordering", "GL_IBM_texture_mirrored_repeat", "GL_MESA_framebuffer_flip_y",
+            "GL_MESA_window_pos", "GL_WIN_swap_hint"));
+        UNKNOWN_EXTENSIONS.put(Vendor.APPLE, unknown("GL_APPLE_client_storage", "GL_APPLE_flush_render",
+            "GL_APPLE_object_purgeable", "GL_APPLE_rgb_422", "GL_APPLE_row_bytes", "GL_APPLE_texture_range",
+            "GL_APPLE_vertex_array_object"));
+    }
+    
+    private final long seed;
+    
+    PopulationGenerator(long seed) {
+        this.seed = seed;
+    }
+    
+    // The i-th record of this population
+    StatRecord generate(long index) {
+        SplittableRandom random = new SplittableRandom(mix(seed + index * 0x9E3779B97F4A7C15L));
+        StatRecord stats = new StatRecord();
+        
+        Os os = OSES.pick(random);
+        Gpu gpu = (os.platform == Platform.MAC ? MAC_GPUS : os.platform == Platform.LINUX ? LINUX_GPUS : WINDOWS_GPUS)
+            .pick(random);
+        
+        // integrated graphics come with the same vendor's CPU, and Apple's GPUs only with Apple silicon
+        Cpu cpu;
+        if (os.platform == Platform.MAC) {
+            cpu = MAC_CPUS.pick(random, c -> c.model.startsWith("Apple") == (gpu.vendor == Vendor.APPLE));
+        } else if (gpu.vramMb == 0) {
+            cpu = DESKTOP_CPUS.pick(random, c -> c.model.contains(gpu.vendor == Vendor.AMD ? "AMD" : "Intel"));
+        } else {
+            cpu = DESKTOP_CPUS.pick(random);
+        }
+        
+        // a few Windows players still run the 32-bit Java the old launcher could pick
+        boolean is32bit = os.platform == Platform.WINDOWS && random.nextInt(100) < 4;
+        String arch = is32bit ? "x86" : os.platform != Platform.MAC ? "amd64"
+            : gpu.vendor == Vendor.APPLE && random.nextBoolean() ? "aarch64" : "x86_64";
+        
+        int systemGb = os.platform == Platform.MAC ? (random.nextBoolean() ? 8 : 16) : MEMORY_GB.pick(random);
+        int heapGb = Math.max(1, Math.min(is32bit ? 1 : HEAP_GB.pick(random), systemGb / 2));
+        long heap = (long) heapGb << 30;
+        
+        List<String> args = getJvmArgs(random, os.platform, heapGb);
+        for (int i = 0; i < args.size(); i++) stats.putString(JVM_ARG_KEYS[i], args.get(i));
+        stats.putLong("jvm_args", args.size());
+        
+        stats.putString("os_name", os.name);
+        stats.putString("os_version", os.versions.pick(random));
+        stats.putString("os_architecture", arch);
+        stats.putString("java_version", os.platform == Platform.MAC && arch.equals("aarch64") ? "1.8.0_392"
+            : JAVA_VERSIONS.pick(random));
+        stats.putBoolean("java_64bit", !is32bit);
+        
+        stats.putLong("memory_total", (heap / 4 + (long) (random.nextDouble() * heap * 3 / 4)) & ~0xFFFFFL);
+        stats.putLong("memory_max", heap - (heap >> 5));
+        
+        stats.putLong("cpu_cores", cpu.cores);
+        stats.putString("cpu_model", cpu.name);
+        stats.putLong("memory_system_total", ((long) systemGb << 30) - random.nextInt(1 << 28));
+        
+        stats.putString("display_model", gpu.renderer);
+        
+        String[] forge = FORGE.pick(random);
+        stats.putString("client_brand", "fml,forge");
+        stats.putString("launched_version", forge[1]);
+        stats.putString("forge_version", forge[0]);
+        if (random.nextInt(100) < 35) stats.putString("optifine_version", OPTIFINE.pick(random));
+        if (random.nextInt(100) < 40) stats.putString("foamfix_version", FOAMFIX.pick(random));
+        
+        String glVersion = gpu.vendor == Vendor.NVIDIA
+            ? "4.6.0 NVIDIA " + (os.platform == Platform.LINUX ? "535.129.03" : NVIDIA_DRIVERS.pick(random))
+            : gpu.glVersion;
+        stats.putString("opengl_version", glVersion);
+        stats.putString("opengl_vendor", gpu.glVendor);
+        
+        addGLCaps(stats, random, gpu, os.platform, GLLimitsProbe.parseVersion(glVersion));
+        return stats;
+    }
+    
+    private static List<String> getJvmArgs(SplittableRandom random, Platform platform, int heapGb) {
+        List<String> args = new ArrayList<>();
+        String xmx = String.format("-Xmx%dG", heapGb);
+        
+        switch (random.nextInt(10)) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+                // the vanilla launcher's defaults
+                if (platform == Platform.WINDOWS) {
+                    args.add("-XX:HeapDumpPath=" +
+                        "MojangTricksIntelDriversForPerformance_javaw.exe_minecraft.exe.heapdump");
+                    args.add("-Xss1M");
+                }
+                args.addAll(Arrays.asList(xmx, "-XX:+UnlockExperimentalVMOptions", "-XX:+UseG1GC",
+                    "-XX:G1NewSizePercent=20", "-XX:G1ReservePercent=20", "-XX:MaxGCPauseMillis=50",
+                    "-XX:G1HeapRegionSize=32M"));
+                break;
+            case 5:
+            case 6:
+            case 7:
+                // MultiMC and its forks
+                args.addAll(Arrays.asList("-Xms512m", String.format("-Xmx%dm", heapGb * 1024)));
+                break;
+            case 8:
+                // Aikar's flags, copied over from server guides
+                args.addAll(Arrays.asList(String.format("-Xms%dG", heapGb), xmx, "-XX:+UseG1GC",
+                    "-XX:+ParallelRefProcEnabled", "-XX:MaxGCPauseMillis=200", "-XX:+UnlockExperimentalVMOptions",
+                    "-XX:+DisableExplicitGC", "-XX:+AlwaysPreTouch", "-XX:G1NewSizePercent=30",
+                    "-XX:G1MaxNewSizePercent=40", "-XX:G1HeapRegionSize=8M"));
+                break;
+            default:
+                // CurseForge
+                args.addAll(Arrays.asList(xmx, "-Xms256m"));
+        }
+        return args;
+    }
+    
+    private static void addGLCaps(StatRecord stats, SplittableRandom random, Gpu gpu, Platform platform, int version) {
+        stats.putLong("gl_max_texture_size", gpu.vendor == Vendor.NVIDIA ? 32768 : 16384);
+        
+        // drivers of the same GPU differ a little from one release to the next
+        double level = gpu.level + (random.nextDouble() - 0.5) * 0.04;
+        BitSet bits = new BitSet(GLCapsRegistry.size());
+        for (int i = 0; i < CAP_THRESHOLDS.length; i++) {
+            if (CAP_VENDORS[i] != null && CAP_VENDORS[i] != gpu.vendor) continue;
+            if (CAP_THRESHOLDS[i] < level) bits.set(i);
+        }
+        
+        String[] unknown = UNKNOWN_EXTENSIONS.get(gpu.vendor);
+        int count = unknown.length / 2 + random.nextInt(unknown.length / 2 + 1);
+        for (int i = 0; i < count; i++) stats.putString(GL_EXT_KEYS[i], unknown[i]);
+        stats.putLong("gl_exts", count);
+        stats.putLong(GLCapsRegistry.VERSION_STAT, GLCapsRegistry.VERSION);
+        stats.putString(GLCapsRegistry.BITS_STAT, GLCapsRegistry.encode(bits));
+        
+        boolean apple = platform == Platform.MAC;
+        long[] limits = {
+            gpu.vendor == Vendor.NVIDIA || apple ? 4096 : 16384,
+            gpu.vendor == Vendor.NVIDIA || apple ? 4096 : 16384,
+            gpu.vendor == Vendor.AMD && !apple ? 32 : 16,
+            apple ? 16 : 32,
+            apple ? 16 : 32,
+            gpu.vendor == Vendor.AMD && !apple ? 8192 : 2048,
+            gpu.vendor == Vendor.NVIDIA ? 32 : gpu.vendor == Vendor.INTEL ? 16 : 8,
+            134217728,
+            65536,
+            gpu.vendor == Vendor.INTEL ? 134217728 : Integer.MAX_VALUE
+        };
+        
+        List<String> unsupported = new ArrayList<>();
+        for (int i = 0; i < LIMIT_NAMES.length; i++) {
+            if (version >= LIMIT_VERSIONS[i]) {
+                stats.putLong(LIMIT_KEYS[i], limits[i]);
+            } else {
+                unsupported.add(LIMIT_NAMES[i]);
+            }
+        }
+        
+        // GL_NVX_gpu_memory_info and GL_ATI_meminfo, which Mesa's radeonsi driver both exposes
+        boolean nvx = gpu.vendor == Vendor.NVIDIA || (platform == Platform.LINUX && gpu.vendor == Vendor.AMD);
+        boolean ati = gpu.vendor == Vendor.AMD && !apple;
+        long vram = (long) gpu.vramMb * 1024;
+        if (nvx && vram > 0) {
+            stats.putLong("opengl_memory", vram);
+            stats.putLong("opengl_memory_available", vram - (long) (random.nextDouble() * vram * 0.4));
+        } else {
+            unsupported.add("opengl_memory");
+            unsupported.add("opengl_memory_available");
+        }
+        if (ati && vram > 0) {
+            stats.putLong("opengl_memory_available_ati", vram - (long) (random.nextDouble() * vram * 0.4));
+        } else {
+            unsupported.add("opengl_memory_available_ati");
+        }
+        if (!unsupported.isEmpty()) stats.putString("gl_limits_unsupported", String.join(",", unsupported));
+    }
+    
+    // Writes records [0, count) as one JSON object per line, gzipped if asked
+    void write(OutputStream out, long count, int threads) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        long next = 0;
+        
+        try {
+            while (next < count || !pending.isEmpty()) {
+                // a couple of chunks per thread in flight keeps them all busy without letting memory grow
+                while (next < count && pending.size() < threads * 2) {
+                    long start = next, end = Math.min(count, start + CHUNK);
+                    pending.add(pool.submit(() -> writeChunk(start, end)));
+                    next = end;
+                }
+                out.write(pending.remove().get());
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private byte[] writeChunk(long start, long end) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK * 2048);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+        
+        for (long i = start; i < end; i++) {
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            for (Map.Entry<String, String> stat : generate(i).toStringMap().entrySet()) {
+                json.name(stat.getKey()).value(stat.getValue());
+            }
+            json.endObject();
+            writer.write('\n');
+        }
+        
+        writer.flush();
+        return bytes.toByteArray();
+    }
+    
+    // Usage: PopulationGenerator --out <file.jsonl[.gz]> [--count 1000000] [--seed 1] [--threads <processors>]
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        String file = options.get("out");
+        if (file == null) throw new IllegalArgumentException("--out is required");
+        
+        long count = ToolOptions.getLong(options, "count", 1_000_000);
+        long seed = ToolOptions.getLong(options, "seed", 1);
+        int threads = (int) ToolOptions.getLong(options, "threads", Runtime.getRuntime().availableProcessors());
+        
+        long start = System.nanoTime();
+        try (OutputStream out = open(file)) {
+            new PopulationGenerator(seed).write(out, count, threads);
+        }
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d records written to %s in %.1f s, %.0f per second%n", count, file, seconds,
+            count / seconds);
+    }
+    
+    private static OutputStream open(String file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(file)), 1 << 16);
+        return file.endsWith(".gz") ? new GZIPOutputStream(out, 1 << 16) : out;
+    }
+    
+    private static String[] getKeys(String format, int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) keys[i] = String.format(format, i);
+        return keys;
+    }
+    
+    private static String[] getKeys(String format, String[] names) {
+        return Arrays.stream(names).map(n -> String.format(format, n)).toArray(String[]::new);
+    }
+    
+    private static String[] unknown(String... extensions) {
+        // the registry may learn some of these later, at which point they belong in gl_caps_bits instead
+        return Arrays.stream(extensions).filter(e -> GLCapsRegistry.indexOf(e.substring(3)) < 0).toArray(String[]::new);
+    }
+    
+    private static Gpu nvidia(String renderer, int vramMb, double level) {
+        return new Gpu(Vendor.NVIDIA, renderer, null, "NVIDIA Corporation", vramMb, level);
+    }
+    
+    private static Gpu amd(String renderer, int vramMb, double level) {
+        return new Gpu(Vendor.AMD, renderer, "4.6.0 Compatibility Profile Context 23.11.1.231017",
+            "ATI Technologies Inc.", vramMb, level);
+    }
+    
+    private static Gpu intel(String renderer, String glVersion, double level) {
+        return new Gpu(Vendor.INTEL, renderer, glVersion, "Intel", 0, level);
+    }
+    
+    // SplitMix64's finaliser, spreads nearby seeds and hashes over the whole range
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static class Os {
+        final String name;
+        final Choice<String> versions;
+        final Platform platform;
+        
+        Os(String name, Choice<String> versions, Platform platform) {
+            this.name = name;
+            this.versions = versions;
+            this.platform = platform;
+        }
+    }
+    
+    private static class Cpu {
+        final int cores;
+        final String model, name;
+        
+        Cpu(int cores, String model) {
+            this.cores = cores;
+            this.model = model;
+            // as OshiProbe reports it, with runs of whitespace collapsed
+            this.name = String.format("%dx %s", cores, model).replaceAll("\\s+", " ");
+        }
+    }
+    
+    private static class Gpu {
+        final Vendor vendor;
+        final String renderer, glVersion, glVendor;
+        final int vramMb;
+        final double level;
+        
+        Gpu(Vendor vendor, String renderer, String glVersion, String glVendor, int vramMb, double level) {
+            this.vendor = vendor;
+            this.renderer = renderer;
+            this.glVersion = glVersion;
+            this.glVendor = glVendor;
+            this.vramMb = vramMb;
+            this.level = level;
+        }
+    }
+    
+    // A weighted choice between values
+    private static class Choice<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+        private double total = 0;
+        
+        Choice<T> add(double weight, T value) {
+            values.add(value);
+            weights.add(weight);
+            total += weight;
+            return this;
+        }
+        
+        T pick(SplittableRandom random) {
+            return pick(random, v -> true);
+        }
+        
+        // Picks among the values that pass the filter, keeping their relative weights
+        T pick(SplittableRandom random, java.util.function.Predicate<T> filter) {
+            double sum = 0;
+            for (int i = 0; i < values.size(); i++) if (filter.test(values.get(i))) sum += weights.get(i);
+            
+            double target = random.nextDouble() * sum;
+            T last = null;
+            for (int i = 0; i < values.size(); i++) {
+                if (!filter.test(values.get(i))) continue;
+                last = values.get(i);
+                target -= weights.get(i);
+                if (target < 0) return last;
+            }
+            return last;
+        }
+    }
+}
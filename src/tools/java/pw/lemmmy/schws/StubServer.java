@@ -0,0 +1,313 @@
+package pw.lemmmy.schws;
+
+import com.google.gson.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// A stand-in for the backend's POST /submit/:token, for testing the client without touching the real server. It makes
+// the same checks in the same order - the token is a UUID, the body has stats, the User-Agent is SCHWS/<mc>/<mod>,
+// previous, removed and replace are valid, and every stat is in stats.json - and answers already_submitted for a token
+// it has seen before, or unknown_previous for a re-survey of one it hasn't. Nothing is stored beyond the tokens.
+//
+// Latency and failures can be injected: each request waits latencyMs plus up to jitterMs, and a failureRate fraction
+// of them fail in the chosen way - an unknown_error response (a database error), a bare 503 from something in front
+// of the server, or the connection closing with no response at all.
+//
+// Point the mod at it with -Dschws.endpoint=http://localhost:8080/submit, or endpoint=... in its properties file.
+public class StubServer {
+    private static final Pattern UUID_PATTERN =
+        Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+    private static final Pattern FAMILY_INDEX_INVALID = Pattern.compile("[.$\\[\\]]");
+    
+    enum Failure { ERROR, STATUS, DROP }
+    
+    private final Set<String> stats = new HashSet<>();
+    private final List<String> statPrefixes = new ArrayList<>();
+    private final Set<String> glCapsVersions = new HashSet<>();
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final String userAgent;
+    
+    private long latencyMs = 0, jitterMs = 0;
+    private double failureRate = 0;
+    private Failure failure = Failure.ERROR;
+    
+    private final AtomicLong accepted = new AtomicLong(), rejected = new AtomicLong(), failed = new AtomicLong();
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    StubServer(Path whitelist, String mcVersion, String modVersion) throws IOException {
+        try (Reader reader = Files.newBufferedReader(whitelist, StandardCharsets.UTF_8)) {
+            for (JsonElement key : new JsonParser().parse(reader).getAsJsonArray()) {
+                String stat = key.getAsString();
+                if (stat.endsWith("[*]")) {
+                    statPrefixes.add(stat.substring(0, stat.length() - 2));
+                } else {
+                    stats.add(stat);
+                }
+            }
+        }
+        
+        // gl_caps.json is generated alongside stats.json
+        Path glCaps = whitelist.resolveSibling("gl_caps.json");
+        try (Reader reader = Files.newBufferedReader(glCaps, StandardCharsets.UTF_8)) {
+            JsonObject versions = new JsonParser().parse(reader).getAsJsonObject().getAsJsonObject("versions");
+            for (Map.Entry<String, JsonElement> version : versions.entrySet()) glCapsVersions.add(version.getKey());
+        }
+        
+        userAgent = String.format("SCHWS/%s/%s", mcVersion, modVersion);
+    }
+    
+    StubServer setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        return this;
+    }
+    
+    StubServer setFailures(double failureRate, Failure failure) {
+        this.failureRate = failureRate;
+        this.failure = failure;
+        return this;
+    }
+    
+    // Port 0 picks a free port. Requests are handled on a pool of the given size, which also bounds how many can be
+    // waiting out the injected latency at once.
+    StubServer start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 256);
+        server.createContext("/submit/", this::handle);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+    
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    String getEndpoint() {
+        return String.format("http://localhost:%d/submit", server.getAddress().getPort());
+    }
+    
+    long getAccepted() {
+        return accepted.get();
+    }
+    
+    long getRejected() {
+        return rejected.get();
+    }
+    
+    long getFailed() {
+        return failed.get();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            
+            long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+            if (delay > 0) TimeUnit.MILLISECONDS.sleep(delay);
+            
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failed.incrementAndGet();
+                
+                // read the whole request first, so the client sees exactly the failure asked for rather than its upload
+                // being cut off
+                try (InputStream body = exchange.getRequestBody()) {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) >= 0) {}
+                }
+                fail(exchange);
+                return;
+            }
+            
+            String token = exchange.getRequestURI().getPath().substring("/submit/".length());
+            String error = check(token, exchange);
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("ok", error == null);
+            if (error == null) {
+                accepted.incrementAndGet();
+                response.addProperty("upliftHeadThought", "Non-blocking is better than nice.");
+            } else {
+                rejected.incrementAndGet();
+                response.addProperty("error", error);
+            }
+            respond(exchange, 200, response.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    // The error the backend would answer with, or null if it would accept the submission
+    private String check(String token, HttpExchange exchange) throws IOException {
+        if (!UUID_PATTERN.matcher(token).matches()) return "invalid_token";
+        
+        JsonObject body;
+        try (Reader reader = new InputStreamReader(getBody(exchange), StandardCharsets.UTF_8)) {
+            JsonElement parsed = new JsonParser().parse(reader);
+            body = parsed.isJsonObject() ? parsed.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            // body-parser answers a malformed body with a 400 before the handler ever sees it
+            return "missing_stats";
+        }
+        if (body == null || !body.has("stats") || !body.get("stats").isJsonObject()) return "missing_stats";
+        
+        if (!userAgent.equals(exchange.getRequestHeaders().getFirst("User-Agent"))) return "invalid_client";
+        
+        JsonElement previous = body.get("previous");
+        if (previous != null && !isValidPrevious(previous, token)) return "invalid_previous";
+        
+        JsonElement removed = body.get("removed");
+        if (removed != null) {
+            if (!removed.isJsonArray()) return "invalid_stat";
+            for (JsonElement key : removed.getAsJsonArray()) {
+                if (!key.isJsonPrimitive() || !key.getAsJsonPrimitive().isString() || !isKnownStat(key.getAsString())) {
+                    return "invalid_stat";
+                }
+            }
+        }
+        
+        JsonElement replace = body.get("replace");
+        if (replace != null) {
+            if (!replace.isJsonPrimitive() || !replace.getAsJsonPrimitive().isBoolean()) return "invalid_replace";
+            boolean removes = removed != null && removed.getAsJsonArray().size() > 0;
+            if (replace.getAsBoolean() && removes) return "invalid_replace";
+        }
+        
+        for (Map.Entry<String, JsonElement> stat : body.getAsJsonObject("stats").entrySet()) {
+            JsonElement value = stat.getValue();
+            if (!isKnownStat(stat.getKey()) || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+                return "invalid_stat";
+            }
+        }
+        
+        JsonObject submitted = body.getAsJsonObject("stats");
+        String glCapsVersion = getString(submitted, GLCapsRegistry.VERSION_STAT);
+        if (submitted.has(GLCapsRegistry.BITS_STAT) && !glCapsVersions.contains(glCapsVersion)) return "invalid_stat";
+        if (!isValidArray(submitted, "jvm_args", "jvm_arg")) return "invalid_jvm_args";
+        if (!isValidArray(submitted, "gl_exts", "gl_ext")) return "invalid_gl_exts";
+        
+        if (previous != null && !tokens.contains(previous.getAsString())) return "unknown_previous";
+        if (!tokens.add(token)) return "already_submitted";
+        return null;
+    }
+    
+    private static boolean isValidPrevious(JsonElement previous, String token) {
+        if (!previous.isJsonPrimitive() || !previous.getAsJsonPrimitive().isString()) return false;
+        String value = previous.getAsString();
+        return UUID_PATTERN.matcher(value).matches() && !value.equals(token);
+    }
+    
+    // Every item[i] up to the count in countKey has to be there
+    private static boolean isValidArray(JsonObject stats, String countKey, String item) {
+        String count = getString(stats, countKey);
+        if (count == null || count.isEmpty()) return true;
+        
+        try {
+            for (int i = 0, n = Integer.parseInt(count); i < n; i++) {
+                if (getString(stats, String.format("%s[%d]", item, i)) == null) return false;
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    private static String getString(JsonObject stats, String key) {
+        JsonElement value = stats.get(key);
+        return value != null ? value.getAsString() : null;
+    }
+    
+    private boolean isKnownStat(String key) {
+        if (stats.contains(key)) return true;
+        for (String prefix : statPrefixes) if (isFamilyStat(key, prefix)) return true;
+        return false;
+    }
+    
+    // as the backend's isFamilyStat: something in the brackets, and no '.' or '$'
+    private static boolean isFamilyStat(String key, String prefix) {
+        if (!key.startsWith(prefix) || !key.endsWith("]")) return false;
+        
+        String index = key.substring(prefix.length(), key.length() - 1);
+        return !index.isEmpty() && !FAMILY_INDEX_INVALID.matcher(index).find();
+    }
+    
+    private static InputStream getBody(HttpExchange exchange) throws IOException {
+        InputStream body = exchange.getRequestBody();
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        return "gzip".equalsIgnoreCase(encoding) ? new GZIPInputStream(body) : body;
+    }
+    
+    private void fail(HttpExchange exchange) throws IOException {
+        switch (failure) {
+            case ERROR:
+                respond(exchange, 200, "{\"ok\":false,\"error\":\"unknown_error\"}");
+                break;
+            case STATUS:
+                exchange.sendResponseHeaders(503, -1);
+                break;
+            case DROP:
+                // closing without sending any headers leaves the client with an empty response
+                break;
+        }
+    }
+    
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+    
+    // Usage: StubServer [--port 8080] [--threads 64] [--stats backend/stats.json] [--mc 1.12.2] [--mod <version>]
+    //                   [--latency <ms>] [--jitter <ms>] [--failure-rate <0-1>] [--failure error|status|drop]
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = ToolOptions.parse(args);
+        
+        StubServer stub = new StubServer(
+            Paths.get(options.getOrDefault("stats", "backend/stats.json")),
+            options.getOrDefault("mc", "1.12.2"),
+            options.getOrDefault("mod", SCHardwareSurvey.VERSION)
+        );
+        stub.setLatency(ToolOptions.getLong(options, "latency", 0), ToolOptions.getLong(options, "jitter", 0));
+        stub.setFailures(
+            ToolOptions.getDouble(options, "failure-rate", 0),
+            Failure.valueOf(options.getOrDefault("failure", "error").toUpperCase(Locale.ROOT))
+        );
+        stub.start((int) ToolOptions.getLong(options, "port", 8080), (int) ToolOptions.getLong(options, "threads", 64));
+        
+        System.out.printf("Stub survey server listening on %s%n", stub.getEndpoint());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.printf(
+            "%d accepted, %d rejected, %d failed on purpose%n", stub.getAccepted(), stub.getRejected(), stub.getFailed()
+        )));
+    }
+}
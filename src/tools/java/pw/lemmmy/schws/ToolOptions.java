@@ -0,0 +1,30 @@
+package pw.lemmmy.schws;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Parses the tools' "--name value" command line options
+final class ToolOptions {
+    private ToolOptions() {}
+    
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+    
+    static long getLong(Map<String, String> options, String name, long fallback) {
+        String value = options.get(name);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+    
+    static double getDouble(Map<String, String> options, String name, double fallback) {
+        String value = options.get(name);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+}